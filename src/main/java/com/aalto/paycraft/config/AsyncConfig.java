@@ -1,13 +1,19 @@
 package com.aalto.paycraft.config;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 public class AsyncConfig {
+    // Webhook inbox workers
     @Bean(name = "taskExecutor")
     public Executor taskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
@@ -18,4 +24,81 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Completes KoraPay HTTP exchanges and their callbacks.
+     * Bounded so a slow provider backs up into the queue instead of spawning threads.
+     */
+    @Bean(name = "koraPayExecutor")
+    public Executor koraPayExecutor(@Value("${kora-executor.core-size:8}") int coreSize,
+                                    @Value("${kora-executor.max-size:16}") int maxSize,
+                                    @Value("${kora-executor.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("KoraPayThread-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Runs payout workers. Sized independently of Tomcat so payout throughput is set here.
+     */
+    @Bean(name = "payoutExecutor")
+    public Executor payoutExecutor(@Value("${payout-executor.core-size:4}") int coreSize,
+                                   @Value("${payout-executor.max-size:8}") int maxSize,
+                                   @Value("${payout-executor.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("PayoutThread-");
+        // Rejected work stays QUEUED in the database and is picked up by the payout sweep
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Threads for FairPayrollExecutor, which decides the order payrolls run in and never starts more
+     * than parallelism workers. The queue only covers a worker that is still exiting as its replacement starts.
+     */
+    @Bean(name = "payrollExecutor")
+    public Executor payrollExecutor(@Value("${payroll.executor.parallelism:4}") int parallelism) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setQueueCapacity(parallelism);
+        executor.setThreadNamePrefix("PayrollThread-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Runs card funding and payroll runs started from USSD, so the gateway gets its answer straight away.
+     * A full queue is reported back to the caller rather than run on the gateway's thread.
+     */
+    @Bean(name = "ussdJobExecutor")
+    public Executor ussdJobExecutor(@Value("${ussd.jobs.core-size:4}") int coreSize,
+                                    @Value("${ussd.jobs.max-size:8}") int maxSize,
+                                    @Value("${ussd.jobs.queue-capacity:500}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("UssdJobThread-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public HttpClient koraPayHttpClient(@Qualifier("koraPayExecutor") Executor koraPayExecutor,
+                                        @Value("${kora-connect-timeout-ms:5000}") long connectTimeoutMs) {
+        return HttpClient.newBuilder()
+                .executor(koraPayExecutor)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+    }
 }
@@ -1,11 +1,7 @@
 package com.aalto.paycraft.config;
 
-import com.aalto.paycraft.entity.AuthToken;
-import com.aalto.paycraft.entity.Employer;
-import com.aalto.paycraft.repository.AuthTokenRepository;
-import com.aalto.paycraft.repository.EmployerRepository;
-import com.aalto.paycraft.service.EmployerDetailService;
 import com.aalto.paycraft.service.JWTService;
+import com.aalto.paycraft.service.TokenEpochService;
 import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.http.HttpServletRequest;
@@ -14,26 +10,26 @@ import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.servlet.HandlerExceptionResolver;
 
-import java.util.Optional;
-import java.util.UUID;
+import java.util.List;
 import java.util.function.Function;
 
 @Component @Slf4j
 @RequiredArgsConstructor
 public class JWTSecurityFilter extends OncePerRequestFilter {
 
+    // Every employer holds the same role (see Employer.getAuthorities)
+    private static final List<SimpleGrantedAuthority> AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+
     private final JWTService jwtService;
-    private final EmployerDetailService userDetailService;
-    private final EmployerRepository employerRepository;
-    private final AuthTokenRepository tokenRepository;
+    private final TokenEpochService tokenEpochService;
     private final HandlerExceptionResolver handlerExceptionResolver;
 
     /**
@@ -45,10 +41,7 @@ public class JWTSecurityFilter extends OncePerRequestFilter {
      * */
     @Override
     protected void doFilterInternal(HttpServletRequest request, @NotNull HttpServletResponse response, @NotNull FilterChain filterChain) {
-        Employer employer = new Employer();
         final String authHeader = request.getHeader("Authorization");
-        final String jwtToken;
-        final String userEmail;
 
         try {
             if(authHeader == null || authHeader.isBlank()){
@@ -56,46 +49,38 @@ public class JWTSecurityFilter extends OncePerRequestFilter {
                 return;
             }
             // Extracts the JWT AuthToken from the Authorization header.
-            jwtToken = authHeader.substring(7);
+            final String jwtToken = authHeader.substring(7);
 
-            // Extracts the Username to confirm he or she exists on the application
+            // The only parse of the token; fails on a bad signature or an expired token
             Claims claims = jwtService.extractClaims(jwtToken, Function.identity());  // Function.identity() returns the same object
-            Optional<Employer> employerOptional = employerRepository.findByEmployerId(UUID.fromString((String) claims.get("userID")));
-            if(employerOptional.isPresent()){
-                employer = employerOptional.get();
-                log.info(employer.getEmailAddress());
-            }
-            userEmail = employer.getEmailAddress();
-
-            log.info(userEmail);
-
-            if(userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null){
-                log.info("ID gotten");
 
-                UserDetails userDetails = userDetailService.loadUserByUsername(userEmail);
+            if(SecurityContextHolder.getContext().getAuthentication() == null){
+                TenantContext tenant = TenantContext.fromClaims(claims);
 
-                /*Function to  Validate the AuthToken -> Checks if the authToken has expired or has been revoked  */
-                Function<AuthToken, Boolean> validateToken = t -> !t.getExpired().equals(true) && !t.getRevoked().equals(true);
-
-                /* Looks for the authToken on the DB, calls function to validate, if it fails, return false */
-                boolean isTokenValid = tokenRepository.findByAccessToken(jwtToken).map(
-                        validateToken
-                ).orElse(false);
-
-                /* If authToken is valid, Sets the SecurityContext to hold UserDetails and Authorities */
-                if(jwtService.isTokenValid(jwtToken, userDetails) && isTokenValid){
+                /* A token is valid while it carries the employer's current token epoch; checked in memory.
+                   Refresh tokens carry no company, so they cannot stand in for access tokens. */
+                if(tenant.activeCompanyId() != null
+                        && tokenEpochService.isCurrent(tenant.employerId(), claims.get(JWTService.CLAIM_EPOCH, Number.class))){
                     SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
                     UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(
-                            userDetails, null, userDetails.getAuthorities()
+                            claims.getSubject(), null, AUTHORITIES
                     );
                     token.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     securityContext.setAuthentication(token);
                     SecurityContextHolder.setContext(securityContext);
+
+                    // Services read the tenant from here instead of parsing the token again
+                    TenantContextHolder.setContext(tenant);
+                } else {
+                    log.warn("Rejected revoked token {} for employer {}", claims.getId(), tenant.employerId());
                 }
             }
             filterChain.doFilter(request, response);
         } catch (Exception ex) {
             handlerExceptionResolver.resolveException(request, response, null, ex);
+        } finally {
+            // Request threads are pooled, so the tenant must not outlive the request
+            TenantContextHolder.clearContext();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,84 @@
+package com.aalto.paycraft.config;
+
+import com.aalto.paycraft.dto.ErrorResponseDto;
+import com.aalto.paycraft.service.RateLimiter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.constraints.NotNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the path-bound rules of {@link RateLimitProperties} to the public endpoints.
+ * Runs ahead of the security chain, so throttled requests never reach BCrypt or the database.
+ * The client IP is the one Tomcat resolves from X-Forwarded-For (server.forward-headers-strategy: native).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RateLimitFilter extends OncePerRequestFilter {
+    private final RateLimitProperties properties;
+    private final RateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Override
+    protected void doFilterInternal(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response,
+                                    @NotNull FilterChain filterChain) throws ServletException, IOException {
+        String path = request.getRequestURI();
+
+        for (Map.Entry<String, RateLimitProperties.Rule> entry : properties.rules().entrySet()) {
+            RateLimitProperties.Rule rule = entry.getValue();
+            if (rule.path() == null || !pathMatcher.match(rule.path(), path))
+                continue;
+
+            long waitNanos = rateLimiter.tryAcquire(entry.getKey(), keyOf(rule, request));
+            if (waitNanos > 0) {
+                reject(request, response, waitNanos);
+                return;
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private static String keyOf(RateLimitProperties.Rule rule, HttpServletRequest request) {
+        if (rule.key() == RateLimitProperties.KeySource.PHONE_NUMBER) {
+            String phoneNumber = request.getParameter("phoneNumber");
+            if (phoneNumber != null && !phoneNumber.isBlank())
+                return phoneNumber;
+        }
+        return request.getRemoteAddr();
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, long waitNanos) throws IOException {
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999));
+        log.warn("Throttled {} from {}, retry after {}s", request.getRequestURI(), request.getRemoteAddr(), retryAfterSeconds);
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponseDto(
+                request.getRequestURI(),
+                HttpStatus.TOO_MANY_REQUESTS,
+                "Too many requests: retry after " + retryAfterSeconds + " seconds",
+                LocalDateTime.now()));
+    }
+}
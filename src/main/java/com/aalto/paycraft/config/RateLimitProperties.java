@@ -0,0 +1,33 @@
+package com.aalto.paycraft.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * Token-bucket limits, bound from rate-limit.* in application.yml.
+ * Rules with a path are applied by RateLimitFilter to matching requests. Rules without one are
+ * checked by name from the service layer, for keys that only exist in the request body.
+ *
+ * @param maxKeys upper bound on buckets held in memory across all rules
+ */
+@ConfigurationProperties(prefix = "rate-limit")
+public record RateLimitProperties(@DefaultValue("true") boolean enabled,
+                                  @DefaultValue("100000") int maxKeys,
+                                  @DefaultValue Map<String, Rule> rules) {
+
+    public enum KeySource { IP, PHONE_NUMBER }
+
+    /**
+     * @param path             Ant-style request path the rule applies to, or null for rules checked in code
+     * @param key              what requests are counted by; falls back to the client IP when absent
+     * @param capacity         requests allowed back to back
+     * @param permitsPerMinute rate at which capacity is refilled
+     */
+    public record Rule(String path,
+                       @DefaultValue("IP") KeySource key,
+                       int capacity,
+                       int permitsPerMinute) {
+    }
+}
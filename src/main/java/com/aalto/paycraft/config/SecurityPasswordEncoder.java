@@ -1,14 +1,35 @@
 package com.aalto.paycraft.config;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+@Slf4j
 @Configuration
 public class SecurityPasswordEncoder {
+
+    /**
+     * BCrypt with a configurable strength. Each step doubles the cost of a login, so the time one hash
+     * takes on this host is logged at startup to check it against the target.
+     * Hashes made with a lower strength are upgraded on the next successful login.
+     */
     @Bean
-    public PasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder(); // Password Encoder...Encodes the password using ByCrypt
+    public PasswordEncoder passwordEncoder(@Value("${security.bcrypt.strength:10}") int strength,
+                                           @Value("${security.bcrypt.target-ms:250}") long targetMillis){
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength); // Password Encoder...Encodes the password using ByCrypt
+
+        encoder.encode("warm-up"); // The first hash includes class loading and JIT
+        long start = System.nanoTime();
+        encoder.encode("cost-probe");
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        if (elapsedMillis > targetMillis)
+            log.warn("BCrypt strength {} takes {} ms per hash, above the {} ms target", strength, elapsedMillis, targetMillis);
+        else
+            log.info("BCrypt strength {} takes {} ms per hash (target {} ms)", strength, elapsedMillis, targetMillis);
+        return encoder;
     }
 }
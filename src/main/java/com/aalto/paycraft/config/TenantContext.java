@@ -0,0 +1,30 @@
+package com.aalto.paycraft.config;
+
+import com.aalto.paycraft.service.JWTService;
+import io.jsonwebtoken.Claims;
+
+import java.util.UUID;
+
+/**
+ * Who a piece of work is being done for: the employer, the company they are acting as,
+ * and the virtual account that pays for it.
+ * Built once from the access token by JWTSecurityFilter, or explicitly for work that runs off-request.
+ */
+public record TenantContext(UUID employerId, UUID activeCompanyId, UUID virtualAccountId) {
+
+    public static TenantContext fromClaims(Claims claims) {
+        return new TenantContext(
+                toUUID(claims.getSubject()),
+                toUUID(claims.get(JWTService.CLAIM_COMPANY)),
+                toUUID(claims.get(JWTService.CLAIM_VIRTUAL_ACCOUNT)));
+    }
+
+    // For scheduler threads acting on behalf of an employer's company
+    public static TenantContext of(UUID employerId, UUID companyId) {
+        return new TenantContext(employerId, companyId, null);
+    }
+
+    private static UUID toUUID(Object value) {
+        return value == null ? null : UUID.fromString(value.toString());
+    }
+}
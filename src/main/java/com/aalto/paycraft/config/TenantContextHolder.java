@@ -0,0 +1,50 @@
+package com.aalto.paycraft.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Thread-bound holder for the current {@link TenantContext}, in the manner of SecurityContextHolder.
+ * Set for the duration of a request by JWTSecurityFilter; scheduler threads use runAs/callAs.
+ */
+public final class TenantContextHolder {
+    private static final ThreadLocal<TenantContext> CONTEXT = new ThreadLocal<>();
+
+    private TenantContextHolder() {
+    }
+
+    public static TenantContext getContext() {
+        TenantContext context = CONTEXT.get();
+        if (context == null)
+            throw new RuntimeException("No tenant context bound to this thread");
+        return context;
+    }
+
+    public static void setContext(TenantContext context) {
+        CONTEXT.set(context);
+    }
+
+    public static void clearContext() {
+        CONTEXT.remove();
+    }
+
+    // Runs the task with the given context bound, restoring whatever was bound before
+    public static void runAs(TenantContext context, Runnable task) {
+        callAs(context, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public static <T> T callAs(TenantContext context, Supplier<T> task) {
+        TenantContext previous = CONTEXT.get();
+        CONTEXT.set(context);
+        try {
+            return task.get();
+        } finally {
+            if (previous == null)
+                CONTEXT.remove();
+            else
+                CONTEXT.set(previous);
+        }
+    }
+}
@@ -67,4 +67,22 @@ public class AuthenticationController {
         DefaultApiResponse<AuthorizationResponseDto> response = authenticationService.refreshToken(request);
         return ResponseEntity.status(HttpStatus.OK).body(response);
     }
+
+    /**
+     * Endpoint for logging out, revoking every access and refresh authToken of the USER.
+     * @return a response confirming the logout.
+     */
+    @Operation(
+            summary = "Logout Employer",
+            description = "REST API to Logout and Revoke all Tokens"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "HTTP Status OK"
+    )
+    @PostMapping("/logout")
+    public ResponseEntity<DefaultApiResponse<?>> logout(){
+        DefaultApiResponse<?> response = authenticationService.logout();
+        return ResponseEntity.status(HttpStatus.OK).body(response);
+    }
 }
@@ -1,9 +1,9 @@
 package com.aalto.paycraft.controller;
 
-import com.aalto.paycraft.dto.BulkPayoutResponseDTO;
 import com.aalto.paycraft.dto.DefaultApiResponse;
 import com.aalto.paycraft.dto.PaymentDTO;
 import com.aalto.paycraft.dto.PaymentDataDTO;
+import com.aalto.paycraft.dto.PayoutDTO;
 import com.aalto.paycraft.service.IPaymentService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -17,6 +17,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Tag(
         name = "Payment Service Controller",
@@ -33,11 +34,11 @@ public class PaymentController {
     @Operation(summary = "Pay an employee",
             description = "Processes the payment for a given employee based on their ID.")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Payment processed successfully"),
+            @ApiResponse(responseCode = "202", description = "Payout queued; poll the payout for its status"),
             @ApiResponse(responseCode = "400", description = "Invalid employee ID")
     })
-    public ResponseEntity<DefaultApiResponse<?>> payEmployee(@RequestParam String employeeId) {
-        return ResponseEntity.status(HttpStatus.OK)
+    public ResponseEntity<DefaultApiResponse<PayoutDTO>> payEmployee(@RequestParam String employeeId) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
                 .body(paymentService.payEmployee(UUID.fromString(employeeId)));
     }
 
@@ -45,14 +46,26 @@ public class PaymentController {
     @Operation(summary = "Pay employees in bulk",
             description = "Processes the payment for the given employees based on the payRoll ID.")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Payment processed successfully"),
+            @ApiResponse(responseCode = "202", description = "Bulk payout queued; poll the payout for its status"),
             @ApiResponse(responseCode = "400", description = "Invalid payroll ID")
     })
-    public ResponseEntity<DefaultApiResponse<BulkPayoutResponseDTO>> payBulkEmployees(@RequestParam String payrollId) {
-        return ResponseEntity.status(HttpStatus.OK)
+    public ResponseEntity<DefaultApiResponse<PayoutDTO>> payBulkEmployees(@RequestParam String payrollId) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
                 .body(paymentService.payEmployeesBulk(UUID.fromString(payrollId)));
     }
 
+    @GetMapping("/payout/{payoutId}")
+    @Operation(summary = "Get payout status",
+            description = "Returns the current state of a queued single or bulk payout.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Payout retrieved"),
+            @ApiResponse(responseCode = "400", description = "Payout not found")
+    })
+    public ResponseEntity<DefaultApiResponse<PayoutDTO>> getPayout(@PathVariable String payoutId) {
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(paymentService.getPayout(UUID.fromString(payoutId)));
+    }
+
     @GetMapping("/banks")
     @Operation(summary = "Get list of banks",
             description = "Retrieves a list of all available bank names.")
@@ -78,10 +91,10 @@ public class PaymentController {
             @ApiResponse(responseCode = "400", description = "Bank transfer failed")
     })
     @GetMapping("/verify-pay/{referenceNumber}") // GET request for verifying bank transfer
-    public ResponseEntity<DefaultApiResponse<?>> verifyPayment(
+    public CompletableFuture<ResponseEntity<DefaultApiResponse<PaymentDTO>>> verifyPayment(
             @PathVariable String referenceNumber) {
-        DefaultApiResponse<?> response = paymentService.verifyPayment(referenceNumber);
-        return ResponseEntity.status(HttpStatus.OK).body(response);
+        return paymentService.verifyPayment(referenceNumber)
+                .thenApply(response -> ResponseEntity.status(HttpStatus.OK).body(response));
     }
 
 }
@@ -3,6 +3,9 @@ package com.aalto.paycraft.controller;
 import com.aalto.paycraft.dto.DefaultApiResponse;
 import com.aalto.paycraft.dto.EmployeeDto;
 import com.aalto.paycraft.dto.PayrollDTO;
+import com.aalto.paycraft.dto.PayrollRunDTO;
+import com.aalto.paycraft.dto.PayrollRunItemDTO;
+import com.aalto.paycraft.dto.PayrollRunPageDTO;
 import com.aalto.paycraft.dto.PayrollUpdateDTO;
 import com.aalto.paycraft.service.IPayrollService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -136,4 +139,31 @@ public class PayrollController {
         return ResponseEntity.status(HttpStatus.OK)
                 .body(iPayrollService.runPayroll(payrollId));
     }
+
+    @Operation(summary = "Get the runs of a payroll, newest first")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Payroll runs retrieved")
+    })
+    @GetMapping(value = "/runs/{payrollId}")
+    public ResponseEntity<DefaultApiResponse<PayrollRunPageDTO<PayrollRunDTO>>> getPayrollRuns(
+            @Valid @PathVariable("payrollId") UUID payrollId,
+            @RequestParam(defaultValue = "10") int pageSize,
+            @RequestParam(defaultValue = "0") int pageNumber) {
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(iPayrollService.getPayrollRuns(payrollId, pageSize, pageNumber));
+    }
+
+    @Operation(summary = "Get the employees paid in a payroll run")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Payroll run items retrieved"),
+            @ApiResponse(responseCode = "404", description = "Payroll run not found")
+    })
+    @GetMapping(value = "/run/{runId}/items")
+    public ResponseEntity<DefaultApiResponse<PayrollRunPageDTO<PayrollRunItemDTO>>> getPayrollRunItems(
+            @Valid @PathVariable("runId") UUID runId,
+            @RequestParam(defaultValue = "50") int pageSize,
+            @RequestParam(defaultValue = "0") int pageNumber) {
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(iPayrollService.getPayrollRunItems(runId, pageSize, pageNumber));
+    }
 }
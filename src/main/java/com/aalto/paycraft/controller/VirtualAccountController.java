@@ -15,6 +15,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Tag(
         name = "Virtual Account Controller",
@@ -57,15 +58,15 @@ public class VirtualAccountController {
             @ApiResponse(responseCode = "400", description = "Unable to get Payment for virtual account")
     })
     @GetMapping("/transactions")
-    public ResponseEntity<DefaultApiResponse<VirtualAccountTransactionDTO>> getTransactionsOfVba(
+    public CompletableFuture<ResponseEntity<DefaultApiResponse<VirtualAccountTransactionDTO>>> getTransactionsOfVba(
             @RequestParam(required = false) String startDate,
             @RequestParam(required = false) String endDate,
             @RequestParam(required = false, defaultValue = "1") Integer page,
             @RequestParam(required = false, defaultValue = "100") Integer limit) {
 
-        DefaultApiResponse<VirtualAccountTransactionDTO> response = virtualAccountService
-                .getTransactionsOfVba(startDate, endDate, page, limit);
-        return ResponseEntity.status(HttpStatus.OK).body(response);
+        // Request thread is released while KoraPay responds
+        return virtualAccountService.getTransactionsOfVba(startDate, endDate, page, limit)
+                .thenApply(response -> ResponseEntity.status(HttpStatus.OK).body(response));
     }
 
     /**
@@ -107,10 +108,10 @@ public class VirtualAccountController {
             @ApiResponse(responseCode = "400", description = "Bank transfer initialization failed")
     })
     @PostMapping("/transfer") // POST request for processing bank transfer
-    public ResponseEntity<DefaultApiResponse<BankTransferDetailsDTO>> processBankTransfer(
+    public CompletableFuture<ResponseEntity<DefaultApiResponse<BankTransferDetailsDTO>>> processBankTransfer(
             @RequestParam BigDecimal amount) {
-        DefaultApiResponse<BankTransferDetailsDTO> response = virtualAccountService.processBankTransfer(amount);
-        return ResponseEntity.status(HttpStatus.OK).body(response);
+        return virtualAccountService.processBankTransfer(amount)
+                .thenApply(response -> ResponseEntity.status(HttpStatus.OK).body(response));
     }
 
     /**
@@ -143,10 +144,11 @@ public class VirtualAccountController {
             @ApiResponse(responseCode = "400", description = "Bank transfer failed")
     })
     @GetMapping("/verify/{referenceNumber}") // GET request for verifying bank transfer
-    public ResponseEntity<DefaultApiResponse<?>> verifyBankTransfer(
+    public CompletableFuture<ResponseEntity<DefaultApiResponse<PaymentDTO>>> verifyBankTransfer(
             @PathVariable String referenceNumber) {
-        DefaultApiResponse<?> response = virtualAccountService.verifyPayment(referenceNumber);
-        return ResponseEntity.status(HttpStatus.OK).body(response);
+        // Completes when the funding webhook arrives; no request thread is held while waiting
+        return virtualAccountService.verifyPayment(referenceNumber)
+                .thenApply(response -> ResponseEntity.status(HttpStatus.OK).body(response));
     }
 
 
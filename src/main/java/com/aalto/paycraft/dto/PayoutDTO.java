@@ -0,0 +1,47 @@
+package com.aalto.paycraft.dto;
+
+import com.aalto.paycraft.dto.enums.PayoutStatus;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data @Builder
+@JsonIgnoreProperties
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PayoutDTO {
+
+    @Schema(description = "Identifier used to poll the payout status", example = "0f8fad5b-d9cb-469f-a165-70867728950e")
+    private UUID payoutId;
+
+    @Schema(description = "Current state of the payout", example = "PROCESSING")
+    private PayoutStatus status;
+
+    @Schema(description = "Amount to be paid out", example = "150000.00")
+    private BigDecimal amount;
+
+    @Schema(description = "Currency of the payout", example = "NGN")
+    private String currency;
+
+    @Schema(description = "Provider reference, available once the payout is submitted", example = "a1b2c3d4e5f6")
+    private String reference;
+
+    @Schema(description = "Employee being paid for a single payout")
+    private UUID employeeId;
+
+    @Schema(description = "Payroll being paid for a bulk payout")
+    private UUID payrollId;
+
+    @Schema(description = "Reason the payout failed, if it did", example = "Insufficient funds")
+    private String failureReason;
+
+    @Schema(description = "When the payout was requested", example = "2023-09-15T14:30:00")
+    private LocalDateTime createdAt;
+
+    @Schema(description = "When the payout last changed state", example = "2023-09-15T14:30:05")
+    private LocalDateTime updatedAt;
+}
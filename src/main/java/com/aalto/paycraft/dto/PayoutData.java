@@ -11,6 +11,7 @@ import java.math.BigDecimal;
 @JsonIgnoreProperties
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class PayoutData {
+    private String reference; // Transfer reference; generated when not set
     private BigDecimal amount;
     private String bankCode;
     private String accountNumber;
@@ -41,6 +41,9 @@ public class PayrollDTO {
     @Schema(description = "Total salary of the payroll", example = "50000.00")
     private BigDecimal totalSalary;
 
+    @Schema(description = "Number of employees on the payroll", example = "12")
+    private Integer employeeCount;
+
     @Schema(description = "Start of the pay period", example = "2023-09-01")
     private LocalDate payPeriodStart;
 
@@ -0,0 +1,37 @@
+package com.aalto.paycraft.dto;
+
+import com.aalto.paycraft.dto.enums.PayrollRunStatus;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data @Builder
+@JsonIgnoreProperties
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PayrollRunDTO {
+
+    @Schema(description = "Identifier of the run", example = "0f8fad5b-d9cb-469f-a165-70867728950e")
+    private UUID runId;
+
+    private UUID payrollId;
+
+    @Schema(description = "Name of the payroll when it ran", example = "October Salaries")
+    private String payrollName;
+
+    @Schema(description = "State of the run", example = "SUBMITTED")
+    private PayrollRunStatus status;
+
+    private Integer employeeCount;
+    private BigDecimal totalAmount;
+    private Integer succeededCount;
+    private Integer failedCount;
+    private String failureReason;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
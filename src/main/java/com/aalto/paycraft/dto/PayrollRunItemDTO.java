@@ -0,0 +1,26 @@
+package com.aalto.paycraft.dto;
+
+import com.aalto.paycraft.dto.enums.PayrollRunItemStatus;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data @Builder
+@JsonIgnoreProperties
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PayrollRunItemDTO {
+    private UUID employeeId;
+    private String fullName;
+    private String bankName;
+    private String accountNumber;
+    private BigDecimal amount;
+    private String currency;
+    private String reference;
+    private PayrollRunItemStatus status;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,17 @@
+package com.aalto.paycraft.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@JsonIgnoreProperties
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PayrollRunPageDTO<T> {
+    private int totalPages;
+    private long totalElements;
+    private int pageSize;
+    private List<T> content;
+}
@@ -0,0 +1,5 @@
+package com.aalto.paycraft.dto.enums;
+
+public enum PayoutStatus {
+    QUEUED, SUBMITTED, PROCESSING, SUCCEEDED, FAILED
+}
@@ -0,0 +1,5 @@
+package com.aalto.paycraft.dto.enums;
+
+public enum PayrollRunChunkStatus {
+    PENDING, SUBMITTED, UNCONFIRMED, FAILED
+}
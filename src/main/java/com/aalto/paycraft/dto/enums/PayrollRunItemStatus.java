@@ -0,0 +1,5 @@
+package com.aalto.paycraft.dto.enums;
+
+public enum PayrollRunItemStatus {
+    PENDING, PROCESSING, SUCCEEDED, FAILED
+}
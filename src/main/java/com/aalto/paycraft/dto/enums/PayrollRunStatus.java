@@ -0,0 +1,5 @@
+package com.aalto.paycraft.dto.enums;
+
+public enum PayrollRunStatus {
+    QUEUED, SUBMITTED, SUCCEEDED, PARTIALLY_FAILED, FAILED
+}
@@ -4,26 +4,41 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
 
+import java.sql.Types;
 import java.time.LocalDateTime;
+import java.util.UUID;
 
+/**
+ * A login session. Tokens are identified by the hex SHA-256 of the JWT (see JWTService.hash),
+ * which keeps the unique indexes narrow; the tokens themselves are never stored.
+ */
 @Entity @Getter @Setter @Builder
 @NoArgsConstructor @AllArgsConstructor
 @ToString(exclude = {"employer"})
+@Table(name = "auth_tokens",
+        indexes = {
+                @Index(name = "idx_auth_tokens_employer_created", columnList = "employerId, createdAt"),
+                @Index(name = "idx_auth_tokens_expires_at", columnList = "expiresAt")})
 public class AuthToken {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false, unique = true, length = 2048)
-    private String accessToken;
+    @Column(nullable = false, unique = true, length = 64)
+    private String accessTokenHash;
 
-    @Column(nullable = false, unique = true, length = 2048)
-    private String refreshToken;
+    @Column(nullable = false, unique = true, length = 64)
+    private String refreshTokenHash;
 
-    @Builder.Default
+    // Company the session was acting as, carried over to the next login
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID activeCompanyId;
+
+    // When the refresh token expires; the row is of no use after that
     @Column(nullable = false)
-    private Boolean expired = false;
+    private LocalDateTime expiresAt;
 
     @Builder.Default
     @Column(nullable = false)
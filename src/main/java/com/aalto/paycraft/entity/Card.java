@@ -10,7 +10,9 @@ import java.util.UUID;
 @Builder @Entity @Getter
 @Setter @ToString
 @AllArgsConstructor @NoArgsConstructor
-@Table(name = "cards")
+@Table(name = "cards",
+        // USSD picks a card by its first six digits within one account
+        indexes = @Index(name = "idx_cards_account_bin", columnList = "account_account_id, card_bin"))
 public class Card {
 
     @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -19,6 +21,13 @@ public class Card {
     @Column(nullable = false, unique = true)
     private String cardNumber;
 
+    // Derived from cardNumber on save, so cards can be found and shown masked without the full number
+    @Column(length = 6)
+    private String cardBin;
+
+    @Column(length = 4)
+    private String cardLast4;
+
     @Column(nullable = false)
     private String expiryMonth;
 
@@ -33,4 +42,11 @@ public class Card {
 
     @ManyToOne(fetch = FetchType.LAZY)
     private VirtualAccount account;
+
+    @PrePersist @PreUpdate
+    void deriveCardDigits() {
+        if (cardNumber == null || cardNumber.length() < 10) return;
+        cardBin = cardNumber.substring(0, 6);
+        cardLast4 = cardNumber.substring(cardNumber.length() - 4);
+    }
 }
@@ -0,0 +1,28 @@
+package com.aalto.paycraft.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A named lease held by one node at a time, used to run singleton background jobs.
+ * The fencing token goes up each time the lease changes hands, so work done under an old token can be told apart.
+ */
+@Entity @Getter @Setter
+@Builder @NoArgsConstructor @AllArgsConstructor
+@Table(name = "cluster_leases")
+public class ClusterLease {
+    @Id
+    @Column(length = 100)
+    private String name;
+
+    @Column(nullable = false)
+    private String owner;
+
+    @Column(nullable = false)
+    private Long fencingToken;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+}
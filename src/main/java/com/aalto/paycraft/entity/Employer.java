@@ -82,6 +82,11 @@ public class Employer extends BaseEntity implements UserDetails {
         return true;
     }
 
+    // Bumped to revoke every token issued so far; only written through EmployerRepository.incrementTokenEpoch
+    @Builder.Default
+    @Column(nullable = false, updatable = false)
+    private Long tokenEpoch = 0L;
+
     @Builder.Default
     @Column(nullable = false)
     private boolean deleted = false;  // soft delete flag
@@ -0,0 +1,53 @@
+package com.aalto.paycraft.entity;
+
+import com.aalto.paycraft.dto.enums.LedgerEntryType;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.JdbcTypeCode;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Append-only record of every balance movement on a virtual account.
+ * The unique key makes posting the same reference twice fail instead of moving money twice.
+ */
+@Builder @Entity @Immutable
+@Getter @Setter @ToString
+@AllArgsConstructor @NoArgsConstructor
+@Table(name = "ledger_entries",
+        uniqueConstraints = @UniqueConstraint(name = "uk_ledger_account_reference_type",
+                columnNames = {"accountId", "reference", "entryType"}),
+        indexes = @Index(name = "idx_ledger_account_created", columnList = "accountId, createdAt"))
+public class LedgerEntry {
+
+    @Id @GeneratedValue
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID entryId;
+
+    @Column(nullable = false)
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID accountId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private LedgerEntryType entryType;
+
+    @Column(nullable = false)
+    private BigDecimal amount;
+
+    // Balance of the account right after this entry was applied
+    @Column(nullable = false)
+    private BigDecimal balanceAfter;
+
+    @Column(nullable = false)
+    private String reference;
+
+    private String description;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
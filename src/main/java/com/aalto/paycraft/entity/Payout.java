@@ -0,0 +1,56 @@
+package com.aalto.paycraft.entity;
+
+import com.aalto.paycraft.dto.enums.PayoutStatus;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.UUID;
+
+/**
+ * A single or bulk payout request and its progress through the payout state machine.
+ * QUEUED -> SUBMITTED -> PROCESSING -> SUCCEEDED | FAILED
+ */
+@Builder @Entity
+@Getter @Setter @ToString
+@AllArgsConstructor @NoArgsConstructor
+@Table(name = "payouts", indexes = {
+        @Index(name = "idx_payout_reference", columnList = "reference"),
+        @Index(name = "idx_payout_status", columnList = "status")
+})
+public class Payout extends BaseEntity {
+
+    @Id @GeneratedValue
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID payoutId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private PayoutStatus status;
+
+    // Stored by id so workers can run without the originating request
+    @Column(nullable = false)
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID employerId;
+
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID employeeId; // Set for a single payout
+
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID payrollId; // Set for a bulk payout
+
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID payrollRunId; // The run whose items a bulk payout pays
+
+    @Column(nullable = false)
+    private BigDecimal amount;
+
+    @Column(nullable = false)
+    private String currency;
+
+    private String reference; // Reference the transfer is sent under, set before it is submitted
+
+    private String failureReason;
+}
@@ -7,6 +7,7 @@ import org.hibernate.annotations.JdbcTypeCode;
 import java.math.BigDecimal;
 import java.sql.Types;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -18,7 +19,7 @@ import java.util.UUID;
 @AllArgsConstructor
 @NoArgsConstructor
 @ToString
-@Table(name = "Payroll")
+@Table(name = "Payroll", indexes = @Index(name = "idx_payroll_next_run_at", columnList = "nextRunAt"))
 public class Payroll extends BaseEntity {
 
     @Id
@@ -33,7 +34,15 @@ public class Payroll extends BaseEntity {
     @Column(nullable = false)
     private Boolean automatic = false; // Indicates if the payroll is automatic
 
-    private BigDecimal totalSalary; // The total salary for the payroll run (can be manually set)
+    // Sum of the salaries of the employees on the payroll. Maintained by PayrollRepository, never written on save
+    @Builder.Default
+    @Column(updatable = false)
+    private BigDecimal totalSalary = BigDecimal.ZERO;
+
+    // Number of employees on the payroll, maintained alongside totalSalary
+    @Builder.Default
+    @Column(nullable = false, updatable = false)
+    private Integer employeeCount = 0;
 
     private LocalDate lastRunDate; // The date to run the payroll (can be null if manually run)
 
@@ -43,6 +52,10 @@ public class Payroll extends BaseEntity {
 
     private String cronExpression;
 
+    // Next time an automatic payroll is due, from cronExpression. Maintained by PayrollJobService, never written on save
+    @Column(updatable = false)
+    private LocalDateTime nextRunAt;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private PaymentStatus paymentStatus;
@@ -56,7 +69,8 @@ public class Payroll extends BaseEntity {
     @JoinTable(
             name = "payroll_employee", // Name of the join table
             joinColumns = @JoinColumn(name = "payrollId"), // Join column for Payroll
-            inverseJoinColumns = @JoinColumn(name = "employeeId") // Join column for Employee
+            inverseJoinColumns = @JoinColumn(name = "employeeId"), // Join column for Employee
+            uniqueConstraints = @UniqueConstraint(name = "uk_payroll_employee", columnNames = {"payrollId", "employeeId"})
     )
     private List<Employee> employees = new ArrayList<>(); // List of employees associated with the payroll
 }
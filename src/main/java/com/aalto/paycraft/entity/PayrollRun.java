@@ -0,0 +1,66 @@
+package com.aalto.paycraft.entity;
+
+import com.aalto.paycraft.dto.enums.PayrollRunStatus;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One run of a payroll. The employees paid are frozen in PayrollRunItem when the run starts,
+ * so the history does not change when employees or the payroll are edited later.
+ */
+@Builder @Entity
+@Getter @Setter @ToString
+@AllArgsConstructor @NoArgsConstructor
+@Table(name = "payroll_runs", indexes = {
+        @Index(name = "idx_payroll_runs_payroll_started", columnList = "payrollId, startedAt"),
+        @Index(name = "idx_payroll_runs_company_started", columnList = "companyId, startedAt")
+})
+public class PayrollRun {
+
+    @Id @GeneratedValue
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID runId;
+
+    @Column(nullable = false)
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID payrollId;
+
+    @Column(nullable = false)
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID companyId;
+
+    @Column(nullable = false)
+    private String payrollName; // As it was when the run started
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private PayrollRunStatus status;
+
+    @Column(nullable = false)
+    private Integer employeeCount;
+
+    @Column(nullable = false)
+    private BigDecimal totalAmount;
+
+    // Maintained from the items as their webhooks arrive
+    @Builder.Default
+    @Column(nullable = false)
+    private Integer succeededCount = 0;
+
+    @Builder.Default
+    @Column(nullable = false)
+    private Integer failedCount = 0;
+
+    private String failureReason;
+
+    @Column(nullable = false)
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,56 @@
+package com.aalto.paycraft.entity;
+
+import com.aalto.paycraft.dto.enums.PayrollRunChunkStatus;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One bulk payout request of a payroll run. Large runs are sent to KoraPay in chunks of items,
+ * each submitted and retried on its own.
+ * UNCONFIRMED means the request may have reached KoraPay without an answer; its items wait for webhooks.
+ */
+@Builder @Entity
+@Getter @Setter @ToString
+@AllArgsConstructor @NoArgsConstructor
+@Table(name = "payroll_run_chunks",
+        uniqueConstraints = @UniqueConstraint(name = "uk_payroll_run_chunks_run_chunk", columnNames = {"runId", "chunkNo"}))
+public class PayrollRunChunk {
+
+    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID runId;
+
+    @Column(nullable = false)
+    private Integer chunkNo;
+
+    @Column(nullable = false)
+    private Integer itemCount;
+
+    @Column(nullable = false)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private PayrollRunChunkStatus status;
+
+    @Builder.Default
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    private String batchReference; // Set before the request is sent, so KoraPay can be asked about it later
+
+    private BigDecimal chargeableAmount; // What KoraPay charges for the chunk, fees included
+
+    private String failureReason;
+
+    private LocalDateTime updatedAt;
+}
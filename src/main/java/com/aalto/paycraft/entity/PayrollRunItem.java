@@ -0,0 +1,70 @@
+package com.aalto.paycraft.entity;
+
+import com.aalto.paycraft.dto.enums.PayrollRunItemStatus;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One employee's transfer in a payroll run, with the salary and bank details used for it.
+ * Rows are written in bulk by PayrollRunService, never through save.
+ */
+@Builder @Entity
+@Getter @Setter @ToString
+@AllArgsConstructor @NoArgsConstructor
+@Table(name = "payroll_run_items", indexes = {
+        @Index(name = "idx_payroll_run_items_run", columnList = "runId, id"),
+        @Index(name = "idx_payroll_run_items_chunk", columnList = "runId, chunkNo"),
+        @Index(name = "uk_payroll_run_items_reference", columnList = "reference", unique = true)
+})
+public class PayrollRunItem {
+
+    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID runId;
+
+    @Column(nullable = false)
+    private Integer chunkNo; // The bulk request of the run this item is sent in
+
+    @Column(nullable = false)
+    @JdbcTypeCode(Types.VARCHAR)
+    private UUID employeeId;
+
+    @Column(nullable = false)
+    private String fullName;
+
+    private String emailAddress;
+
+    @Column(nullable = false)
+    private String bankName;
+
+    @Column(nullable = false)
+    private String bankCode;
+
+    @Column(nullable = false)
+    private String accountNumber;
+
+    @Column(nullable = false)
+    private BigDecimal amount;
+
+    @Column(nullable = false)
+    private String currency;
+
+    // Sent to KoraPay as the transfer reference, so item webhooks can be matched back
+    @Column(nullable = false, length = 64)
+    private String reference;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private PayrollRunItemStatus status;
+
+    private LocalDateTime updatedAt;
+}
@@ -24,10 +24,16 @@ public class VirtualAccount {
     @Column(unique = true, nullable = false)
     private String accountNumber;
 
-    // The balance of the virtual account
+    // The balance of the virtual account, maintained by LedgerService
     @Column(nullable = false)
     private BigDecimal balance;
 
+    // Guards against a stale copy of the account overwriting a newer balance
+    @Version
+    @Column(nullable = false)
+    @Builder.Default
+    private Long version = 0L;
+
     // Account reference generated when creating account
     @Column(unique = true, nullable = false)
     private String accountReference;
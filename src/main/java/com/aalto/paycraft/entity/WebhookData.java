@@ -7,6 +7,8 @@ import java.math.BigDecimal;
 
 @Entity @Getter @Setter
 @Builder @NoArgsConstructor @AllArgsConstructor
+// KoraPay retries deliveries, so each event is stored once per reference
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_webhook_data_reference_event", columnNames = {"reference", "event"}))
 public class WebhookData {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,47 @@
+package com.aalto.paycraft.entity;
+
+import com.aalto.paycraft.dto.enums.WebhookInboxStatus;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Raw, signature-verified webhook waiting to be processed.
+ * The webhook endpoint only appends here; WebhookInboxProcessor drains it in batches.
+ */
+@Entity @Getter @Setter
+@Builder @NoArgsConstructor @AllArgsConstructor
+@Table(name = "webhook_inbox", indexes = {
+        @Index(name = "idx_webhook_inbox_status", columnList = "status, receivedAt"),
+        @Index(name = "idx_webhook_inbox_claim", columnList = "claimToken")
+})
+public class WebhookInbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Lob
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload; // Raw request body as received from KoraPay
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private WebhookInboxStatus status;
+
+    @Column(nullable = false)
+    private LocalDateTime receivedAt;
+
+    private String claimToken; // Identifies the drain that owns the row while PROCESSING
+
+    private LocalDateTime claimedAt;
+
+    private LocalDateTime processedAt;
+
+    @Builder.Default
+    @Column(nullable = false)
+    private int attempts = 0;
+
+    @Column(length = 1000)
+    private String lastError;
+}
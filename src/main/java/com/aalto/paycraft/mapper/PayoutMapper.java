@@ -0,0 +1,27 @@
+package com.aalto.paycraft.mapper;
+
+import com.aalto.paycraft.dto.PayoutDTO;
+import com.aalto.paycraft.entity.Payout;
+
+public class PayoutMapper {
+
+    // Convert Payout entity to PayoutDTO
+    public static PayoutDTO toDTO(Payout payout) {
+        if (payout == null) {
+            return null;
+        }
+
+        return PayoutDTO.builder()
+                .payoutId(payout.getPayoutId())
+                .status(payout.getStatus())
+                .amount(payout.getAmount())
+                .currency(payout.getCurrency())
+                .reference(payout.getReference())
+                .employeeId(payout.getEmployeeId())
+                .payrollId(payout.getPayrollId())
+                .failureReason(payout.getFailureReason())
+                .createdAt(payout.getCreatedAt())
+                .updatedAt(payout.getUpdatedAt())
+                .build();
+    }
+}
@@ -34,6 +34,8 @@ public class PayrollMapper{
                 .lastRunDate(payroll.getLastRunDate())
                 .cronExpression(payroll.getCronExpression())
                 .paymentStatus(payroll.getPaymentStatus())
+                .totalSalary(payroll.getTotalSalary())
+                .employeeCount(payroll.getEmployeeCount())
                 .build();
     }
 }
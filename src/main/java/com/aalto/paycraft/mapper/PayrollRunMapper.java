@@ -0,0 +1,52 @@
+package com.aalto.paycraft.mapper;
+
+import com.aalto.paycraft.dto.PayrollRunDTO;
+import com.aalto.paycraft.dto.PayrollRunItemDTO;
+import com.aalto.paycraft.dto.PayrollRunPageDTO;
+import com.aalto.paycraft.entity.PayrollRun;
+import com.aalto.paycraft.entity.PayrollRunItem;
+import org.springframework.data.domain.Page;
+
+import java.util.function.Function;
+
+public class PayrollRunMapper {
+
+    public static PayrollRunDTO toDTO(PayrollRun run) {
+        return PayrollRunDTO.builder()
+                .runId(run.getRunId())
+                .payrollId(run.getPayrollId())
+                .payrollName(run.getPayrollName())
+                .status(run.getStatus())
+                .employeeCount(run.getEmployeeCount())
+                .totalAmount(run.getTotalAmount())
+                .succeededCount(run.getSucceededCount())
+                .failedCount(run.getFailedCount())
+                .failureReason(run.getFailureReason())
+                .startedAt(run.getStartedAt())
+                .finishedAt(run.getFinishedAt())
+                .build();
+    }
+
+    public static PayrollRunItemDTO toDTO(PayrollRunItem item) {
+        return PayrollRunItemDTO.builder()
+                .employeeId(item.getEmployeeId())
+                .fullName(item.getFullName())
+                .bankName(item.getBankName())
+                .accountNumber(item.getAccountNumber())
+                .amount(item.getAmount())
+                .currency(item.getCurrency())
+                .reference(item.getReference())
+                .status(item.getStatus())
+                .updatedAt(item.getUpdatedAt())
+                .build();
+    }
+
+    public static <E, D> PayrollRunPageDTO<D> toPageDTO(Page<E> page, Function<E, D> mapper) {
+        PayrollRunPageDTO<D> dto = new PayrollRunPageDTO<>();
+        dto.setTotalPages(page.getTotalPages());
+        dto.setTotalElements(page.getTotalElements());
+        dto.setPageSize(page.getSize());
+        dto.setContent(page.getContent().stream().map(mapper).toList());
+        return dto;
+    }
+}
@@ -2,20 +2,34 @@ package com.aalto.paycraft.repository;
 
 import com.aalto.paycraft.entity.AuthToken;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface AuthTokenRepository extends JpaRepository<AuthToken, Long> {
 
-    Optional<AuthToken> findByAccessToken(String authToken);
-
-    // List all Tokens belonging to that Employer
-    List<AuthToken> findAllByEmployer_EmployerId(UUID employerId);
+    Optional<AuthToken> findByAccessTokenHash(String accessTokenHash);
 
     // Find the Last Generated Token for the Employer
     Optional<AuthToken> findFirstByEmployer_EmployerIdOrderByCreatedAtDesc(UUID employerId);
+
+    // Marks a refresh token as used; 0 means it is unknown, expired or was already used
+    @Modifying
+    @Transactional
+    @Query("UPDATE AuthToken t SET t.revoked = true WHERE t.refreshTokenHash = :refreshTokenHash " +
+            "AND t.revoked = false AND t.expiresAt > :now")
+    int revokeByRefreshTokenHash(String refreshTokenHash, LocalDateTime now);
+
+    // One bounded batch of the purge; MySQL allows LIMIT on a single-table DELETE
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM auth_tokens WHERE expires_at < :now OR revoked = true LIMIT :batchSize",
+            nativeQuery = true)
+    int deleteExpiredOrRevoked(LocalDateTime now, int batchSize);
 }
@@ -2,11 +2,39 @@ package com.aalto.paycraft.repository;
 
 import com.aalto.paycraft.entity.Card;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface CardRepository extends JpaRepository<Card, Long> {
     List<Card> findAllByAccount_AccountId(UUID accountId);
+
+    // The masked digits only; the card number, CVV and PIN stay in the database
+    interface CardSummary {
+        Long getCardId();
+        String getCardBin();
+        String getCardLast4();
+
+        default String getMaskedCardNumber() {
+            return getCardBin() + "******" + getCardLast4();
+        }
+    }
+
+    List<CardSummary> findSummariesByAccount_AccountIdOrderByCardId(UUID accountId);
+
+    Optional<Card> findFirstByAccount_AccountIdAndCardBinOrderByCardId(UUID accountId, String cardBin);
+
+    // Fills the derived columns for cards saved before they existed
+    @Modifying
+    @Transactional
+    @Query("UPDATE Card c SET c.cardBin = SUBSTRING(c.cardNumber, 1, 6), " +
+            "c.cardLast4 = SUBSTRING(c.cardNumber, LENGTH(c.cardNumber) - 3, 4) " +
+            "WHERE c.cardBin IS NULL AND LENGTH(c.cardNumber) >= 10")
+    int backfillCardDigits();
 }
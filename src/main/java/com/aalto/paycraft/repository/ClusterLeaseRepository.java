@@ -0,0 +1,53 @@
+package com.aalto.paycraft.repository;
+
+import com.aalto.paycraft.entity.ClusterLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+/*
+ * Expiry is read and written against the database clock (NOW(6)), so nodes whose clocks drift apart still agree
+ * on when a lease runs out.
+ */
+@Repository
+public interface ClusterLeaseRepository extends JpaRepository<ClusterLease, String> {
+
+    /*
+     * Creates the lease, renews it for its owner, or takes it over once it has expired, in one statement.
+     * expires_at is assigned last, so every condition reads the old expiry; a takeover bumps the fencing token,
+     * a renewal keeps it.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO cluster_leases (name, owner, fencing_token, expires_at) " +
+            "VALUES (:name, :owner, 1, TIMESTAMPADD(MICROSECOND, :ttlMillis * 1000, NOW(6))) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "fencing_token = IF(expires_at <= NOW(6), fencing_token + 1, fencing_token), " +
+            "owner = IF(expires_at <= NOW(6), :owner, owner), " +
+            "expires_at = IF(expires_at <= NOW(6) OR owner = :owner, TIMESTAMPADD(MICROSECOND, :ttlMillis * 1000, NOW(6)), expires_at)",
+            nativeQuery = true)
+    int acquire(String name, String owner, long ttlMillis);
+
+    @Query(value = "SELECT fencing_token FROM cluster_leases WHERE name = :name AND owner = :owner AND expires_at > NOW(6)",
+            nativeQuery = true)
+    Optional<Long> findHeldToken(String name, String owner);
+
+    // Only extends a lease the owner still holds under the same token
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE cluster_leases SET expires_at = TIMESTAMPADD(MICROSECOND, :ttlMillis * 1000, NOW(6)) " +
+            "WHERE name = :name AND owner = :owner AND fencing_token = :fencingToken AND expires_at > NOW(6)",
+            nativeQuery = true)
+    int renew(String name, String owner, long fencingToken, long ttlMillis);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE cluster_leases SET expires_at = NOW(6) " +
+            "WHERE name = :name AND owner = :owner AND fencing_token = :fencingToken",
+            nativeQuery = true)
+    int release(String name, String owner, long fencingToken);
+}
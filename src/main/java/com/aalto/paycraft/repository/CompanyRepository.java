@@ -16,4 +16,5 @@ public interface CompanyRepository extends JpaRepository<Company, UUID> {
     boolean existsByCompanyPhoneNumber(String phoneNumber);
     Optional<Company> findByCompanyPhoneNumber(String phoneNumber);
     boolean existsByCompanyEmailAddress(String companyEmailAddress);
+    long countByEmployer_EmployerId(UUID employerId);
 }
@@ -1,7 +1,9 @@
 package com.aalto.paycraft.repository;
 
 import com.aalto.paycraft.entity.Employee;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
@@ -15,6 +17,11 @@ public interface EmployeeRepository extends JpaRepository<Employee, UUID> {
     @Query("SELECT e FROM Employee e WHERE e.employeeId = :employeeId AND e.deleted = false")
     Optional<Employee> findByEmployeeId(UUID employeeId);
 
+    // Locks the employee so a salary change and a payroll membership change are applied one after the other
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM Employee e WHERE e.employeeId = :employeeId AND e.deleted = false")
+    Optional<Employee> findByEmployeeIdForUpdate(UUID employeeId);
+
     @Query("SELECT e FROM Employee e WHERE e.deleted = false AND e.company.companyId = :companyId")
     List<Employee> findAllByDeletedFalseAndCompanyId(UUID companyId);
 
@@ -2,9 +2,13 @@ package com.aalto.paycraft.repository;
 
 import com.aalto.paycraft.entity.Employer;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -15,12 +19,42 @@ public interface EmployerRepository extends JpaRepository<Employer, UUID> {
     @Query("SELECT e FROM Employer e WHERE e.emailAddress = :emailAddress AND e.deleted = false")
     Optional<Employer> findByEmailAddress(String emailAddress);
 
+    // Everything token generation reads, in one query
+    @Query("SELECT e FROM Employer e LEFT JOIN FETCH e.companies LEFT JOIN FETCH e.virtualAccount " +
+            "WHERE e.emailAddress = :emailAddress AND e.deleted = false")
+    Optional<Employer> findForLoginByEmailAddress(String emailAddress);
+
+    @Query("SELECT e FROM Employer e LEFT JOIN FETCH e.companies LEFT JOIN FETCH e.virtualAccount " +
+            "WHERE e.employerId = :employerId AND e.deleted = false")
+    Optional<Employer> findForLoginByEmployerId(UUID employerId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Employer e SET e.password = :password WHERE e.employerId = :employerId")
+    int updatePassword(UUID employerId, String password);
+
     @Query("SELECT e FROM Employer e WHERE e.phoneNumber = :phoneNumber AND e.deleted = false")
     Optional<Employer> findByPhoneNumber(String phoneNumber);
 
+    // The employer and virtual account behind a USSD session, in one query
+    @Query("SELECT e FROM Employer e LEFT JOIN FETCH e.virtualAccount WHERE e.phoneNumber = :phoneNumber AND e.deleted = false")
+    Optional<Employer> findWithVirtualAccountByPhoneNumber(String phoneNumber);
+
     @Query("SELECT e FROM Employer e WHERE e.employerId = :employerId AND e.deleted = false")
     Optional<Employer> findByEmployerId(UUID employerId);
 
+    @Query("SELECT e.tokenEpoch FROM Employer e WHERE e.employerId = :employerId AND e.deleted = false")
+    Optional<Long> findTokenEpochByEmployerId(UUID employerId);
+
+    // Rows of (employerId, tokenEpoch) for active employers
+    @Query("SELECT e.employerId, e.tokenEpoch FROM Employer e WHERE e.employerId IN :employerIds AND e.deleted = false")
+    List<Object[]> findTokenEpochsByEmployerIds(Collection<UUID> employerIds);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Employer e SET e.tokenEpoch = e.tokenEpoch + 1 WHERE e.employerId = :employerId")
+    int incrementTokenEpoch(UUID employerId);
+
     @Query("SELECT CASE WHEN COUNT(e) > 0 THEN TRUE ELSE FALSE END FROM Employer e WHERE e.phoneNumber = :phoneNumber AND e.deleted = false")
     boolean existsByPhoneNumber(String phoneNumber);
 
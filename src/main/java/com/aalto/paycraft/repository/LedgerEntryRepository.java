@@ -0,0 +1,13 @@
+package com.aalto.paycraft.repository;
+
+import com.aalto.paycraft.dto.enums.LedgerEntryType;
+import com.aalto.paycraft.entity.LedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, UUID> {
+    boolean existsByReferenceAndEntryType(String reference, LedgerEntryType entryType);
+}
@@ -0,0 +1,43 @@
+package com.aalto.paycraft.repository;
+
+import com.aalto.paycraft.dto.enums.PayoutStatus;
+import com.aalto.paycraft.entity.Payout;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface PayoutRepository extends JpaRepository<Payout, UUID> {
+    Optional<Payout> findByReference(String reference);
+
+    Optional<Payout> findByPayrollRunId(UUID payrollRunId);
+
+    // Moves a payout between states only if it is still in the expected state; returns 0 if another worker won
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payout p SET p.status = :to, p.updatedAt = :now WHERE p.payoutId = :payoutId AND p.status = :from")
+    int transition(UUID payoutId, PayoutStatus from, PayoutStatus to, LocalDateTime now);
+
+    // Shows the payout is still being worked on, so the sweep leaves it alone
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payout p SET p.updatedAt = :now WHERE p.payoutId = :payoutId AND p.status = :status")
+    int touch(UUID payoutId, PayoutStatus status, LocalDateTime now);
+
+    // Takes a payout that has not moved since before; returns 0 if it has moved on or another node took it first
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payout p SET p.updatedAt = :now " +
+            "WHERE p.payoutId = :payoutId AND p.status = :status AND p.updatedAt < :before")
+    int claimStale(UUID payoutId, PayoutStatus status, LocalDateTime before, LocalDateTime now);
+
+    @Query("SELECT p FROM Payout p WHERE p.status = :status AND p.updatedAt < :before")
+    List<Payout> findAllByStatusUpdatedBefore(PayoutStatus status, LocalDateTime before);
+}
@@ -1,18 +1,48 @@
 package com.aalto.paycraft.repository;
 
 import com.aalto.paycraft.entity.Payroll;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface PayrollRepository extends JpaRepository<Payroll, UUID> {
-    @Query("SELECT p FROM Payroll p WHERE p.automatic IS true")
-    List<Payroll> findAllWhereAutomaticIsTrue();
+    /*
+     * Locks up to batchSize due payrolls; rows locked by another node are skipped rather than waited on.
+     * Claims take turns between companies: every company's earliest due payroll comes before any company's
+     * second, so one company with thousands due at once cannot take every free worker.
+     */
+    @Query(value = "SELECT p.payroll_id, p.cron_expression, p.company_id FROM payroll p " +
+            "JOIN (SELECT payroll_id, ROW_NUMBER() OVER (PARTITION BY company_id ORDER BY next_run_at, payroll_id) AS turn " +
+            "FROM payroll WHERE next_run_at <= :now) due ON due.payroll_id = p.payroll_id " +
+            "WHERE p.next_run_at <= :now ORDER BY due.turn, p.next_run_at LIMIT :batchSize FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<Object[]> lockDuePayrolls(LocalDateTime now, int batchSize);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payroll p SET p.nextRunAt = :nextRunAt WHERE p.payrollId = :payrollId")
+    int updateNextRunAt(UUID payrollId, LocalDateTime nextRunAt);
+
+    // Hands a claimed run back to the poller, unless the payroll was rescheduled since it was claimed
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payroll p SET p.nextRunAt = :dueAt WHERE p.payrollId = :payrollId AND p.nextRunAt = :claimedNextRunAt")
+    int releaseClaim(UUID payrollId, LocalDateTime claimedNextRunAt, LocalDateTime dueAt);
+
+    // Automatic payrolls without a next run (created before nextRunAt existed), paged by id
+    @Query("SELECT p.payrollId, p.cronExpression FROM Payroll p WHERE p.automatic IS true " +
+            "AND p.cronExpression IS NOT NULL AND p.nextRunAt IS NULL AND p.payrollId > :afterId ORDER BY p.payrollId")
+    List<Object[]> findUnscheduledAutomatic(UUID afterId, Pageable pageable);
 
     @Query("SELECT p FROM Payroll p WHERE p.automatic IS false AND p.company.companyId = :companyId")
     List<Payroll> findAllWhereAutomaticIsFalseByCompanyId(UUID companyId);
@@ -25,4 +55,50 @@ public interface PayrollRepository extends JpaRepository<Payroll, UUID> {
     List<Payroll> findAllByCompanyId(UUID companyId);
 
     Optional<Payroll> findByPayrollId(UUID payrollId);
+
+    // Loads the employees with the payroll for use outside a web request
+    @Query("SELECT p FROM Payroll p LEFT JOIN FETCH p.employees WHERE p.payrollId = :payrollId")
+    Optional<Payroll> findWithEmployeesByPayrollId(UUID payrollId);
+
+    @Query("SELECT e.employeeId FROM Payroll p JOIN p.employees e WHERE p.payrollId = :payrollId")
+    List<UUID> findEmployeeIdsByPayrollId(UUID payrollId);
+
+    @Query(value = "SELECT COUNT(*) FROM payroll_employee WHERE payroll_id = :payrollId AND employee_id = :employeeId",
+            nativeQuery = true)
+    long countMembership(String payrollId, String employeeId);
+
+    // Membership is changed on the join table directly so the payroll row is only touched by adjustTotals
+    @Modifying
+    @Query(value = "INSERT INTO payroll_employee (payroll_id, employee_id) VALUES (:payrollId, :employeeId)",
+            nativeQuery = true)
+    int addEmployee(String payrollId, String employeeId);
+
+    @Modifying
+    @Query(value = "DELETE FROM payroll_employee WHERE payroll_id = :payrollId AND employee_id = :employeeId",
+            nativeQuery = true)
+    int removeEmployee(String payrollId, String employeeId);
+
+    // Applies a change to the running totals in place, so concurrent changes add up
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Payroll p SET p.totalSalary = COALESCE(p.totalSalary, 0) + :salaryDelta, " +
+            "p.employeeCount = p.employeeCount + :countDelta WHERE p.payrollId = :payrollId")
+    int adjustTotals(UUID payrollId, BigDecimal salaryDelta, int countDelta);
+
+    // Moves the total of every payroll the employee is on when their salary changes
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE payroll p JOIN payroll_employee pe ON pe.payroll_id = p.payroll_id " +
+            "SET p.total_salary = COALESCE(p.total_salary, 0) + :salaryDelta WHERE pe.employee_id = :employeeId",
+            nativeQuery = true)
+    int adjustTotalsForEmployee(String employeeId, BigDecimal salaryDelta);
+
+    // Recomputes every payroll's totals from its members in one statement; used to repair drift
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE payroll p LEFT JOIN (" +
+            "SELECT pe.payroll_id, COUNT(*) AS employee_count, SUM(e.salary_amount) AS total_salary " +
+            "FROM payroll_employee pe JOIN employee e ON e.employee_id = pe.employee_id GROUP BY pe.payroll_id) t " +
+            "ON t.payroll_id = p.payroll_id " +
+            "SET p.employee_count = COALESCE(t.employee_count, 0), p.total_salary = COALESCE(t.total_salary, 0)",
+            nativeQuery = true)
+    int recomputeTotals();
 }
@@ -0,0 +1,13 @@
+package com.aalto.paycraft.repository;
+
+import com.aalto.paycraft.entity.PayrollRunChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface PayrollRunChunkRepository extends JpaRepository<PayrollRunChunk, Long> {
+    List<PayrollRunChunk> findAllByRunIdOrderByChunkNo(UUID runId);
+}
@@ -0,0 +1,54 @@
+package com.aalto.paycraft.repository;
+
+import com.aalto.paycraft.dto.enums.PayrollRunItemStatus;
+import com.aalto.paycraft.entity.PayrollRunItem;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface PayrollRunItemRepository extends JpaRepository<PayrollRunItem, Long> {
+    Page<PayrollRunItem> findAllByRunIdOrderById(UUID runId, Pageable pageable);
+
+    List<PayrollRunItem> findAllByRunIdAndChunkNoOrderById(UUID runId, Integer chunkNo);
+
+    // Locks the items so a concurrent webhook for the same item waits and then finds it settled
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM PayrollRunItem i WHERE i.reference IN :references AND i.status IN :statuses")
+    List<PayrollRunItem> findAllForUpdate(Collection<String> references, Collection<PayrollRunItemStatus> statuses);
+
+    @Query("SELECT DISTINCT i.runId FROM PayrollRunItem i WHERE i.reference IN :references")
+    List<UUID> findRunIdsByReferences(Collection<String> references);
+
+    // Every item of a chunk moves together when its request is accepted or rejected
+    @Modifying
+    @Transactional
+    @Query("UPDATE PayrollRunItem i SET i.status = :to, i.updatedAt = :now " +
+            "WHERE i.runId = :runId AND i.chunkNo = :chunkNo AND i.status = :from")
+    int transitionChunk(UUID runId, Integer chunkNo, PayrollRunItemStatus from, PayrollRunItemStatus to, LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PayrollRunItem i SET i.status = :to, i.updatedAt = :now WHERE i.runId = :runId AND i.status = :from")
+    int transitionRun(UUID runId, PayrollRunItemStatus from, PayrollRunItemStatus to, LocalDateTime now);
+
+    // Applies one status to many items at once; items already settled are left alone.
+    // A webhook can beat the chunk's own update, so items still PENDING are settled too
+    @Modifying
+    @Transactional
+    @Query("UPDATE PayrollRunItem i SET i.status = :to, i.updatedAt = :now " +
+            "WHERE i.reference IN :references AND i.status IN :from")
+    int transitionByReferences(Collection<String> references, Collection<PayrollRunItemStatus> from,
+                               PayrollRunItemStatus to, LocalDateTime now);
+}
@@ -0,0 +1,45 @@
+package com.aalto.paycraft.repository;
+
+import com.aalto.paycraft.dto.enums.PayrollRunStatus;
+import com.aalto.paycraft.entity.PayrollRun;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface PayrollRunRepository extends JpaRepository<PayrollRun, UUID> {
+    Page<PayrollRun> findAllByPayrollIdAndCompanyIdOrderByStartedAtDesc(UUID payrollId, UUID companyId, Pageable pageable);
+
+    Optional<PayrollRun> findByRunIdAndCompanyId(UUID runId, UUID companyId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PayrollRun r SET r.status = :status, r.failureReason = :failureReason, r.finishedAt = :finishedAt " +
+            "WHERE r.runId = :runId")
+    int updateStatus(UUID runId, PayrollRunStatus status, String failureReason, LocalDateTime finishedAt);
+
+    /*
+     * Recounts the items of the given runs in one statement. A run is finished once no item is still
+     * pending or processing; it then succeeded, failed, or partially failed depending on the counts.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE payroll_runs r JOIN (" +
+            "SELECT run_id, COUNT(*) AS total, SUM(status = 'SUCCEEDED') AS succeeded, SUM(status = 'FAILED') AS failed " +
+            "FROM payroll_run_items WHERE run_id IN (:runIds) GROUP BY run_id) t ON t.run_id = r.run_id " +
+            "SET r.succeeded_count = t.succeeded, r.failed_count = t.failed, " +
+            "r.status = IF(t.succeeded + t.failed < t.total, r.status, " +
+            "IF(t.failed = 0, 'SUCCEEDED', IF(t.succeeded = 0, 'FAILED', 'PARTIALLY_FAILED'))), " +
+            "r.finished_at = IF(t.succeeded + t.failed < t.total, r.finished_at, :now)",
+            nativeQuery = true)
+    int recountItems(Collection<String> runIds, LocalDateTime now);
+}
@@ -2,8 +2,11 @@ package com.aalto.paycraft.repository;
 
 import com.aalto.paycraft.entity.VirtualAccount;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -11,4 +14,19 @@ import java.util.UUID;
 public interface VirtualAccountRepository extends JpaRepository<VirtualAccount, UUID> {
     // Find Virtual Account given the EmployerId
     Optional<VirtualAccount> findByEmployer_EmployerId(UUID employerId);
+
+    // Balance changes are single conditional statements so concurrent updates never overwrite each other
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE VirtualAccount v SET v.balance = v.balance + :amount, v.version = v.version + 1 " +
+            "WHERE v.accountId = :accountId")
+    int credit(UUID accountId, BigDecimal amount);
+
+    // Returns 0 when the balance does not cover the amount
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE VirtualAccount v SET v.balance = v.balance - :amount, v.version = v.version + 1 " +
+            "WHERE v.accountId = :accountId AND v.balance >= :amount")
+    int debit(UUID accountId, BigDecimal amount);
+
+    @Query("SELECT v.balance FROM VirtualAccount v WHERE v.accountId = :accountId")
+    Optional<BigDecimal> findBalanceByAccountId(UUID accountId);
 }
@@ -7,6 +7,6 @@ import java.util.Optional;
 
 @Repository
 public interface WebhookDataRepository extends JpaRepository<WebhookData, Long> {
-    // Get WebHook Data by the Reference Number
-    Optional<WebhookData> findByReference(String reference);
+    // Get the latest WebHook Data by the Reference Number; a reference can carry more than one event
+    Optional<WebhookData> findFirstByReferenceOrderByIdDesc(String reference);
 }
@@ -0,0 +1,51 @@
+package com.aalto.paycraft.repository;
+
+import com.aalto.paycraft.dto.enums.WebhookInboxStatus;
+import com.aalto.paycraft.entity.WebhookInbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface WebhookInboxRepository extends JpaRepository<WebhookInbox, Long> {
+
+    // Oldest rows that are waiting, or whose claim has expired
+    @Query("SELECT w.id FROM WebhookInbox w WHERE w.status = :pending " +
+            "OR (w.status = :processing AND w.claimedAt < :claimExpiredBefore) ORDER BY w.id")
+    List<Long> findClaimableIds(WebhookInboxStatus pending, WebhookInboxStatus processing,
+                                LocalDateTime claimExpiredBefore, Pageable pageable);
+
+    // Claims rows for one drain; rows already taken by another drain are skipped
+    @Modifying
+    @Transactional
+    @Query("UPDATE WebhookInbox w SET w.status = :processing, w.claimToken = :claimToken, w.claimedAt = :now, " +
+            "w.attempts = w.attempts + 1 WHERE w.id IN :ids " +
+            "AND (w.status = :pending OR (w.status = :processing AND w.claimedAt < :claimExpiredBefore))")
+    int claim(Collection<Long> ids, WebhookInboxStatus pending, WebhookInboxStatus processing,
+              String claimToken, LocalDateTime now, LocalDateTime claimExpiredBefore);
+
+    List<WebhookInbox> findAllByClaimToken(String claimToken);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE WebhookInbox w SET w.status = :status, w.processedAt = :now, w.lastError = :error WHERE w.id IN :ids")
+    int complete(Collection<Long> ids, WebhookInboxStatus status, LocalDateTime now, String error);
+
+    long countByStatus(WebhookInboxStatus status);
+
+    @Query("SELECT MIN(w.receivedAt) FROM WebhookInbox w WHERE w.status = :status")
+    Optional<LocalDateTime> findOldestReceivedAtByStatus(WebhookInboxStatus status);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM WebhookInbox w WHERE w.status = :status AND w.processedAt < :before")
+    int deleteByStatusProcessedBefore(WebhookInboxStatus status, LocalDateTime before);
+}
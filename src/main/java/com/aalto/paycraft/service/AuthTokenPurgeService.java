@@ -0,0 +1,75 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.repository.AuthTokenRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes sessions whose refresh token has expired or was used.
+ * Rows go in bounded batches, each its own short transaction, so the purge never holds
+ * locks on a large part of the table while logins are inserting into it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AuthTokenPurgeService {
+    private final AuthTokenRepository tokenRepository;
+    private final MeterRegistry meterRegistry;
+    private final LeaseService leaseService;
+
+    private static final String LEASE = "auth-token-purge";
+
+    @Value("${auth.token-purge.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${auth.token-purge.max-batches:100}")
+    private int maxBatches;
+
+    @Value("${cluster.lease.ttl-ms:60000}")
+    private long leaseTtlMillis;
+
+    private final AtomicLong tableSize = new AtomicLong();
+    private Counter purged;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("auth.tokens.rows", tableSize, AtomicLong::get)
+                .description("Rows in auth_tokens after the last purge")
+                .register(meterRegistry);
+        purged = meterRegistry.counter("auth.tokens.purged");
+    }
+
+    @Scheduled(cron = "${auth.token-purge.cron:0 30 3 * * *}")
+    public void purge() {
+        leaseService.runExclusively(LEASE, Duration.ofMillis(leaseTtlMillis), this::purge);
+    }
+
+    private void purge(long fencingToken) {
+        LocalDateTime now = LocalDateTime.now();
+        long total = 0;
+        int batches = 0;
+        int deleted;
+
+        // Anything left over once maxBatches is reached goes on the next run.
+        // Stops early if the lease has moved to another node, which will carry on from there
+        do {
+            deleted = tokenRepository.deleteExpiredOrRevoked(now, batchSize);
+            total += deleted;
+            purged.increment(deleted);
+        } while (deleted == batchSize && ++batches < maxBatches && leaseService.isHeld(LEASE, fencingToken));
+
+        tableSize.set(tokenRepository.count());
+        log.info("Purged {} expired or revoked tokens, {} remain", total, tableSize.get());
+    }
+}
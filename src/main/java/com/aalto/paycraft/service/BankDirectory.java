@@ -0,0 +1,110 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.dto.BankTypeDTO;
+import com.aalto.paycraft.dto.DefaultKoraResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory directory of the banks supported by KoraPay.
+ * The list is fetched once, indexed by name and by code, and refreshed in the background.
+ * A failed or slow refresh keeps serving the last good snapshot.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BankDirectory {
+    private final IKoraPayService koraPayService;
+
+    @Value("${bank-directory.ttl-ms:21600000}")
+    private long ttlMillis;
+
+    private volatile Snapshot snapshot;
+
+    // Immutable view of the bank list, swapped atomically on refresh
+    private record Snapshot(List<String> names, Map<String, String> codeByName,
+                            Map<String, String> nameByCode, long loadedAt) {}
+
+    public List<String> getBankNames() {
+        return currentSnapshot().names();
+    }
+
+    public String getBankCode(String bankName) {
+        String code = currentSnapshot().codeByName().get(bankName);
+        if (code == null)
+            throw new RuntimeException("Bank not found: " + bankName);
+        return code;
+    }
+
+    public Optional<String> getBankName(String bankCode) {
+        return Optional.ofNullable(currentSnapshot().nameByCode().get(bankCode));
+    }
+
+    /**
+     * Refreshes the snapshot once it is older than the configured TTL.
+     * Runs on the scheduler so request threads never wait for the provider after the first load.
+     */
+    @Scheduled(fixedDelayString = "${bank-directory.refresh-check-ms:60000}")
+    public void refreshIfStale() {
+        Snapshot current = snapshot;
+        if (current != null && System.currentTimeMillis() - current.loadedAt() < ttlMillis)
+            return;
+
+        try {
+            snapshot = load();
+        } catch (Exception e) {
+            log.warn("Unable to refresh bank directory, serving last good copy: {}", e.getMessage());
+        }
+    }
+
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        if (current != null)
+            return current;
+
+        // First use before the scheduler has populated the directory
+        synchronized (this) {
+            if (snapshot == null) {
+                try {
+                    snapshot = load();
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to fetch banks: " + e.getMessage());
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    private Snapshot load() throws Exception {
+        DefaultKoraResponse<List<BankTypeDTO>> bankListResponse = koraPayService.listBanks();
+
+        if (!"Successful".equals(bankListResponse.getMessage()) || bankListResponse.getData() == null)
+            throw new RuntimeException("Failed to fetch banks: " + bankListResponse.getMessage());
+
+        List<BankTypeDTO> banks = bankListResponse.getData();
+        Map<String, String> codeByName = new LinkedHashMap<>(banks.size() * 2);
+        Map<String, String> nameByCode = new HashMap<>(banks.size() * 2);
+
+        for (BankTypeDTO bank : banks) {
+            if (bank.getName() == null || bank.getCode() == null) continue;
+            codeByName.putIfAbsent(bank.getName(), bank.getCode());
+            nameByCode.putIfAbsent(bank.getCode(), bank.getName());
+        }
+
+        log.info("Bank directory loaded with {} banks", banks.size());
+        return new Snapshot(
+                List.copyOf(codeByName.keySet()),
+                Map.copyOf(codeByName),
+                Map.copyOf(nameByCode),
+                System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,206 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.dto.BulkPayoutResponseDTO;
+import com.aalto.paycraft.dto.DefaultKoraResponse;
+import com.aalto.paycraft.dto.enums.PayrollRunChunkStatus;
+import com.aalto.paycraft.entity.Employer;
+import com.aalto.paycraft.entity.PayrollRunChunk;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends a payroll run to KoraPay as one bulk request per chunk, with at most max-concurrent-chunks in flight.
+ * A chunk KoraPay turns down, or that never reached it, is retried with the same batch and item references up to
+ * max-attempts times. A chunk whose request may have arrived without an answer is not retried; its
+ * items are settled by their webhooks instead.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkPayoutSubmitter {
+    private final IKoraPayAsyncService koraPayAsyncService;
+    private final PayrollRunService payrollRunService;
+
+    @Value("${payout.bulk.max-concurrent-chunks:4}")
+    private int maxConcurrentChunks;
+
+    @Value("${payout.bulk.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${payout.bulk.retry-backoff-ms:2000}")
+    private long retryBackoffMillis;
+
+    private static final String ACCEPTED = "Bulk payout initiated successfully";
+
+    /**
+     * The combined outcome of a run's chunks.
+     * @param sentAmount salaries in chunks that were accepted or may have been
+     * @param chargeableAmount what KoraPay charges for those chunks, fees included
+     * @param failedAmount salaries in chunks that definitely were not sent
+     * @param unconfirmedChunks chunks that may have been sent, whose items wait for their webhooks
+     * @param reference the batch reference of the first accepted chunk, or null if none was accepted
+     */
+    public record Result(int chunks, int failedChunks, int unconfirmedChunks, BigDecimal sentAmount,
+                         BigDecimal chargeableAmount, BigDecimal failedAmount, String reference, String lastFailure) {
+        public boolean nothingSent() {
+            return failedChunks == chunks;
+        }
+    }
+
+    /**
+     * Blocks the calling payout worker until every chunk is accepted, unconfirmed or failed.
+     * If submission stops part way (the worker is interrupted, or a chunk cannot be built), no further chunks are
+     * sent; the ones in flight are waited for and those never sent are marked FAILED, so only their salaries are
+     * counted as failed.
+     * @param onProgress called as each chunk settles, so the caller can show the submission is still alive
+     */
+    public Result submit(UUID runId, Employer employer, Runnable onProgress) {
+        List<PayrollRunChunk> chunks = payrollRunService.chunksOf(runId);
+        Semaphore inFlight = new Semaphore(maxConcurrentChunks);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(chunks.size());
+
+        String stoppedBy = null;
+        try {
+            for (PayrollRunChunk chunk : chunks) {
+                // A resubmitted payout only sends the chunks that have not been through submission yet
+                if (chunk.getStatus() != PayrollRunChunkStatus.PENDING)
+                    continue;
+                inFlight.acquire();
+                try {
+                    payrollRunService.ensureBatchReference(chunk);
+                    futures.add(submitChunk(chunk, employer).whenComplete((ignored, e) -> {
+                        inFlight.release();
+                        progress(onProgress);
+                    }));
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stoppedBy = "interrupted";
+        } catch (RuntimeException e) {
+            stoppedBy = e.getMessage();
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        if (stoppedBy != null) {
+            log.warn("Submission of run {} stopped ({}), unsent chunks are failed", runId, stoppedBy);
+            for (PayrollRunChunk chunk : chunks) {
+                if (chunk.getStatus() == PayrollRunChunkStatus.PENDING)
+                    payrollRunService.chunkFailed(chunk, "Submission stopped: " + stoppedBy);
+            }
+        }
+
+        int failedChunks = 0;
+        int unconfirmedChunks = 0;
+        BigDecimal sent = BigDecimal.ZERO;
+        BigDecimal chargeable = BigDecimal.ZERO;
+        BigDecimal failed = BigDecimal.ZERO;
+        String reference = null;
+        String lastFailure = null;
+        for (PayrollRunChunk chunk : chunks) {
+            if (chunk.getStatus() == PayrollRunChunkStatus.FAILED) {
+                failedChunks++;
+                failed = failed.add(chunk.getAmount());
+                lastFailure = chunk.getFailureReason();
+                continue;
+            }
+            if (chunk.getStatus() == PayrollRunChunkStatus.UNCONFIRMED)
+                unconfirmedChunks++;
+            sent = sent.add(chunk.getAmount());
+            chargeable = chargeable.add(chunk.getChargeableAmount() != null ? chunk.getChargeableAmount() : chunk.getAmount());
+            if (reference == null)
+                reference = chunk.getBatchReference();
+        }
+
+        log.info("Run {} submitted in {} chunks, {} failed, {} unconfirmed", runId, chunks.size(), failedChunks, unconfirmedChunks);
+        return new Result(chunks.size(), failedChunks, unconfirmedChunks, sent, chargeable, failed, reference, lastFailure);
+    }
+
+    private CompletableFuture<Void> submitChunk(PayrollRunChunk chunk, Employer employer) {
+        chunk.setAttempts(chunk.getAttempts() + 1);
+
+        // Only this chunk's request body is built, so memory does not grow with the payroll
+        return koraPayAsyncService.requestBulkPayoutAsync(chunk.getBatchReference(),
+                        payrollRunService.payoutDataFor(chunk.getRunId(), chunk.getChunkNo()), employer)
+                .handle((response, error) -> {
+                    if (error == null && ACCEPTED.equals(response.getMessage())) {
+                        BulkPayoutResponseDTO data = response.getData();
+                        payrollRunService.chunkAccepted(chunk, data.getReference(), data.getTotal_chargeable_amount());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+
+                    if (error != null && !IKoraPayAsyncService.neverSent(error)) {
+                        log.warn("No answer for chunk {} of run {}: {}", chunk.getChunkNo(), chunk.getRunId(), error.getMessage());
+                        payrollRunService.chunkUnconfirmed(chunk, "No answer from provider: " + error.getMessage());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+
+                    String reason = error != null ? error.getMessage() : response.getMessage();
+                    if (chunk.getAttempts() < maxAttempts) {
+                        log.info("Retrying chunk {} of run {} ({})", chunk.getChunkNo(), chunk.getRunId(), reason);
+                        return CompletableFuture.supplyAsync(() -> null,
+                                        CompletableFuture.delayedExecutor(retryBackoffMillis * chunk.getAttempts(), TimeUnit.MILLISECONDS))
+                                .thenCompose(ignored -> submitChunk(chunk, employer));
+                    }
+
+                    payrollRunService.chunkFailed(chunk, "Payout request failed: " + reason);
+                    return CompletableFuture.<Void>completedFuture(null);
+                })
+                .thenCompose(next -> next)
+                .exceptionally(e -> {
+                    // Recording the outcome failed; leave the items open rather than refund money that may have gone
+                    log.error("Error submitting chunk {} of run {}: {}", chunk.getChunkNo(), chunk.getRunId(), e.getMessage());
+                    recordUnconfirmed(chunk, "Outcome not recorded: " + e.getMessage());
+                    return null;
+                });
+    }
+
+    /*
+     * Persists the chunk as UNCONFIRMED so it is never sent again, retrying up to max-attempts. If that still
+     * fails the row stays PENDING under its batch reference, which reconciliation looks up at KoraPay before
+     * anything is resent.
+     */
+    private void recordUnconfirmed(PayrollRunChunk chunk, String reason) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                payrollRunService.chunkUnconfirmed(chunk, reason);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    log.error("Could not record chunk {} of run {} as unconfirmed: {}", chunk.getChunkNo(), chunk.getRunId(), e.getMessage());
+                    // Counted as unconfirmed in this submission's result, so its salaries are not given back
+                    chunk.setStatus(PayrollRunChunkStatus.UNCONFIRMED);
+                    return;
+                }
+                try {
+                    Thread.sleep(retryBackoffMillis * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    chunk.setStatus(PayrollRunChunkStatus.UNCONFIRMED);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void progress(Runnable onProgress) {
+        try {
+            onProgress.run();
+        } catch (RuntimeException e) {
+            log.warn("Could not record submission progress: {}", e.getMessage());
+        }
+    }
+}
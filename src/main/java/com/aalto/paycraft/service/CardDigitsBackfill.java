@@ -0,0 +1,25 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.repository.CardRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills cardBin and cardLast4 for cards saved before those columns existed.
+ * New and updated cards derive them on save, so after the first run this updates nothing.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CardDigitsBackfill implements CommandLineRunner {
+    private final CardRepository cardRepository;
+
+    @Override
+    public void run(String... args) {
+        int updated = cardRepository.backfillCardDigits();
+        if (updated > 0)
+            log.info("Backfilled card digits for {} cards", updated);
+    }
+}
@@ -0,0 +1,154 @@
+package com.aalto.paycraft.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs payrolls on the payroll executor, at most parallelism at a time, taking turns between companies.
+ * Runs are only accepted while a worker is free for them, so the fairness between companies comes mostly from
+ * the claim (PayrollRepository.lockDuePayrolls hands out each company's earliest due payroll before anyone's
+ * second); the per-company queues keep runs claimed in one poll in that order.
+ * Workers take their next run from the ring as they finish instead of going back through the executor.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FairPayrollExecutor {
+    private final MeterRegistry meterRegistry;
+
+    @Qualifier("payrollExecutor")
+    private final Executor payrollExecutor;
+
+    @Value("${payroll.executor.parallelism:4}")
+    private int parallelism;
+
+    private record QueuedRun(UUID companyId, Runnable run, long queuedAt) {
+    }
+
+    // All guarded by this
+    private final Map<UUID, ArrayDeque<QueuedRun>> queues = new HashMap<>();
+    private final ArrayDeque<UUID> ring = new ArrayDeque<>();
+    private int queued;
+    private int workers;
+    private int active;
+
+    private Timer queueWait;
+    private Timer runDuration;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("payroll.runs.active", this, executor -> executor.activeRuns())
+                .description("Payroll runs in progress")
+                .register(meterRegistry);
+        Gauge.builder("payroll.runs.queued", this, executor -> executor.queuedRuns())
+                .description("Payroll runs waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("payroll.runs.companies", this, executor -> executor.waitingCompanies())
+                .description("Companies with payroll runs waiting")
+                .register(meterRegistry);
+        queueWait = Timer.builder("payroll.run.queue.wait")
+                .description("Time from a payroll run being queued to it starting")
+                .register(meterRegistry);
+        runDuration = Timer.builder("payroll.run.duration")
+                .description("Time taken to run a payroll")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues a run for the company.
+     * @return false if every worker is already taken
+     */
+    public synchronized boolean submit(UUID companyId, Runnable run) {
+        if (active + queued >= parallelism)
+            return false;
+
+        queues.computeIfAbsent(companyId, id -> {
+            ring.addLast(id);
+            return new ArrayDeque<>();
+        }).addLast(new QueuedRun(companyId, run, System.nanoTime()));
+        queued++;
+
+        if (workers < parallelism)
+            startWorker();
+        return true;
+    }
+
+    // How many workers are free for another run; the poller claims no more than this
+    public synchronized int remainingCapacity() {
+        return Math.max(0, parallelism - active - queued);
+    }
+
+    private void startWorker() {
+        workers++;
+        try {
+            payrollExecutor.execute(this::work);
+        } catch (RejectedExecutionException e) {
+            // Runs stay queued for the workers that are already going
+            workers--;
+            log.warn("Payroll executor rejected a worker, {} runs queued", queued);
+        }
+    }
+
+    private void work() {
+        QueuedRun next;
+        while ((next = take()) != null) {
+            queueWait.record(System.nanoTime() - next.queuedAt(), TimeUnit.NANOSECONDS);
+            try {
+                runDuration.record(next.run());
+            } catch (Exception e) {
+                log.error("Payroll run for company {} failed: {}", next.companyId(), e.getMessage());
+            } finally {
+                synchronized (this) {
+                    active--;
+                }
+            }
+        }
+    }
+
+    // The next run from the company at the head of the ring, which then moves to the back
+    private synchronized QueuedRun take() {
+        UUID companyId = ring.pollFirst();
+        if (companyId == null) {
+            workers--;
+            return null;
+        }
+
+        ArrayDeque<QueuedRun> queue = queues.get(companyId);
+        QueuedRun next = queue.pollFirst();
+        if (queue.isEmpty())
+            queues.remove(companyId);
+        else
+            ring.addLast(companyId);
+
+        queued--;
+        active++;
+        return next;
+    }
+
+    private synchronized int activeRuns() {
+        return active;
+    }
+
+    private synchronized int queuedRuns() {
+        return queued;
+    }
+
+    private synchronized int waitingCompanies() {
+        return ring.size();
+    }
+}
@@ -8,5 +8,6 @@ import com.aalto.paycraft.dto.RefreshTokenRequestDto;
 public interface IAuthenticationService {
     DefaultApiResponse<AuthorizationResponseDto> login(LoginRequestDto requestBody);
     DefaultApiResponse<AuthorizationResponseDto> refreshToken(RefreshTokenRequestDto requestBody);
+    DefaultApiResponse<?> logout();
 }
 
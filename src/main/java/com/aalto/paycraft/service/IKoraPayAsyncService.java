@@ -0,0 +1,46 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.dto.*;
+import com.aalto.paycraft.entity.Employer;
+
+import java.math.BigDecimal;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link IKoraPayService}.
+ * Calls are sent with HttpClient.sendAsync and complete on the bounded KoraPay executor,
+ * so the calling thread is released while the provider round trip is in flight.
+ */
+public interface IKoraPayAsyncService {
+    // Virtual Bank Account
+    CompletableFuture<DefaultKoraResponse<VirtualAccountResponseDTO>> createVirtualAccountAsync(Employer employer);
+    CompletableFuture<DefaultKoraResponse<VBATransactionDTO>> getTransactionOfVBAAsync(String accountNumber, Employer employer,
+                                                                                      String startDate, String endDate, Integer page, Integer limit);
+    // Bank Transfer
+    CompletableFuture<DefaultKoraResponse<BankTransferResponseDTO>> initiateBankTransferAsync(BigDecimal amount, Employer employer);
+
+    // Payout
+    CompletableFuture<DefaultKoraResponse<List<BankTypeDTO>>> listBanksAsync();
+    CompletableFuture<DefaultKoraResponse<BankAccountDTO>> resolveBankAccountAsync(String bankCode, String accountNumber);
+    CompletableFuture<DefaultKoraResponse<PayoutResponseDTO>> requestPayoutAsync(String reference, String bankCode, String accountNumber, BigDecimal amount, Employer employer);
+    CompletableFuture<DefaultKoraResponse<BulkPayoutResponseDTO>> requestBulkPayoutAsync(String batchReference, List<PayoutData> payrollList, Employer employer);
+    CompletableFuture<DefaultKoraResponse<PayoutResponseDTO>> getPayoutAsync(String reference);
+    CompletableFuture<DefaultKoraResponse<BulkPayoutResponseDTO>> getBulkPayoutAsync(String batchReference);
+
+    CompletableFuture<DefaultKoraResponse<PaymentDataDTO>> chargeCardAsync(CardFundingRequestDTO payload, Employer employer);
+
+    /**
+     * True if a failed call never reached KoraPay, so it is safe to send again or to give back what it reserved.
+     * Any other failure, such as a read timeout, may have reached KoraPay after all.
+     */
+    static boolean neverSent(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException)
+                return true;
+        }
+        return false;
+    }
+}
@@ -18,8 +18,12 @@ public interface IKoraPayService {
     // Payout
     DefaultKoraResponse<List<BankTypeDTO>> listBanks() throws Exception;
     DefaultKoraResponse<BankAccountDTO> resolveBankAccount(String bankCode, String accountNumber) throws Exception;
-    DefaultKoraResponse<PayoutResponseDTO> requestPayout(String bankCode, String accountNumber, BigDecimal amount, Employer employer) throws Exception;
-    DefaultKoraResponse<BulkPayoutResponseDTO> requestBulkPayout(List<PayoutData> payrollList, Employer employer) throws Exception;
+    DefaultKoraResponse<PayoutResponseDTO> requestPayout(String reference, String bankCode, String accountNumber, BigDecimal amount, Employer employer) throws Exception;
+    DefaultKoraResponse<BulkPayoutResponseDTO> requestBulkPayout(String batchReference, List<PayoutData> payrollList, Employer employer) throws Exception;
+
+    // Lookups by the reference a payout was sent under; data is null if KoraPay never received it
+    DefaultKoraResponse<PayoutResponseDTO> getPayout(String reference) throws Exception;
+    DefaultKoraResponse<BulkPayoutResponseDTO> getBulkPayout(String batchReference) throws Exception;
 
     DefaultKoraResponse<PaymentDataDTO> chargeCard(CardFundingRequestDTO payload, Employer employer) throws Exception;
 }
@@ -1,15 +1,17 @@
 package com.aalto.paycraft.service;
 
-import com.aalto.paycraft.dto.BulkPayoutResponseDTO;
 import com.aalto.paycraft.dto.DefaultApiResponse;
 import com.aalto.paycraft.dto.PaymentDTO;
+import com.aalto.paycraft.dto.PayoutDTO;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public interface IPaymentService {
     DefaultApiResponse<List<String>> getBankNames() throws Exception;
-    DefaultApiResponse<?> payEmployee(UUID employeeId);
-    DefaultApiResponse<BulkPayoutResponseDTO> payEmployeesBulk(UUID payrollId);
-    DefaultApiResponse<?> verifyPayment(String referenceNumber);
+    DefaultApiResponse<PayoutDTO> payEmployee(UUID employeeId);
+    DefaultApiResponse<PayoutDTO> payEmployeesBulk(UUID payrollId);
+    DefaultApiResponse<PayoutDTO> getPayout(UUID payoutId);
+    CompletableFuture<DefaultApiResponse<PaymentDTO>> verifyPayment(String referenceNumber);
 }
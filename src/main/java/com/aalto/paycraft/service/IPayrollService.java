@@ -3,6 +3,9 @@ package com.aalto.paycraft.service;
 import com.aalto.paycraft.dto.DefaultApiResponse;
 import com.aalto.paycraft.dto.EmployeeDto;
 import com.aalto.paycraft.dto.PayrollDTO;
+import com.aalto.paycraft.dto.PayrollRunDTO;
+import com.aalto.paycraft.dto.PayrollRunItemDTO;
+import com.aalto.paycraft.dto.PayrollRunPageDTO;
 import com.aalto.paycraft.dto.PayrollUpdateDTO;
 
 import java.util.List;
@@ -18,4 +21,6 @@ public interface IPayrollService {
     DefaultApiResponse<PayrollDTO> runPayroll(UUID payrollId);
     DefaultApiResponse<PayrollDTO> updatePayroll(PayrollUpdateDTO payrollUpdateDTO, UUID payroll);
     DefaultApiResponse<List<PayrollDTO>> getAllPayroll();
+    DefaultApiResponse<PayrollRunPageDTO<PayrollRunDTO>> getPayrollRuns(UUID payrollId, int pageSize, int pageNumber);
+    DefaultApiResponse<PayrollRunPageDTO<PayrollRunItemDTO>> getPayrollRunItems(UUID runId, int pageSize, int pageNumber);
 }
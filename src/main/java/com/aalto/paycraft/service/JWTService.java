@@ -1,22 +1,22 @@
 package com.aalto.paycraft.service;
 
-import com.aalto.paycraft.entity.Company;
 import com.aalto.paycraft.entity.Employer;
-import com.aalto.paycraft.repository.CompanyRepository;
-import com.aalto.paycraft.repository.EmployerRepository;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.Claims;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.Pageable;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.*;
 import java.util.function.Function;
 
@@ -24,8 +24,16 @@ import java.util.function.Function;
 @RequiredArgsConstructor
 public class JWTService {
 
-    private final CompanyRepository companyRepository;
-    private final EmployerRepository employerRepository;
+    private final TokenEpochService tokenEpochService;
+
+    // Claim names; kept short because every request carries them
+    public static final String CLAIM_COMPANY = "cid";
+    public static final String CLAIM_VIRTUAL_ACCOUNT = "vid";
+    public static final String CLAIM_EPOCH = "ep";
+
+    private static final String CLAIMS_ATTRIBUTE = JWTService.class.getName() + ".claims";
+
+    private record ParsedToken(String token, Claims claims) {}
 
     // Fetch the secret string from the application properties file
     @Value("${secret-string}")
@@ -36,6 +44,7 @@ public class JWTService {
     // Token validity times: 1 hour for access tokens, 24 hours for refresh tokens
     private static final long ACCESS_TOKEN_VALIDITY_TIME = 3_600_000; // 1hr
     private static final long REFRESH_TOKEN_VALIDITY_TIME = 86_400_000; // 24hrs
+    public static final Duration REFRESH_TOKEN_VALIDITY = Duration.ofMillis(REFRESH_TOKEN_VALIDITY_TIME);
 
     // Initialize the secret key once the secret string is loaded
     @PostConstruct
@@ -53,96 +62,86 @@ public class JWTService {
         return generateToken(employer, companyId );
     }
 
-    // Generate a JWT with claims from the Employer entity
+    /*
+     * Access tokens carry ids only, under short names: sub is the employer id, plus the active company,
+     * the virtual account and the token epoch. Profile fields are served by GET api/v1/employer/details.
+     */
     private String generateToken(Employer employer, UUID companyId) {
         HashMap<String, Object> claims = new HashMap<>();
-
-        UUID activeCompanyId =
-                companyId.toString().isEmpty() ?
-                        companyRepository.findAllByEmployer_EmployerId(
-                                employer.getEmployerId(),
-                                Pageable.ofSize(10)).get(0).getCompanyId()
-                        : companyId;
-        List<String> companyIds = new ArrayList<>();
-
-        for(Company company : employer.getCompanies()){
-            companyIds.add(company.getCompanyId().toString());
-        }
-
-        claims.put("userID", employer.getEmployerId());
-        claims.put("firstName", employer.getFirstName());
-        claims.put("lastName", employer.getLastName());
-        claims.put("email", employer.getEmailAddress());
-        claims.put("phoneNumber", employer.getPhoneNumber());
-        claims.put("activeCompanyID", activeCompanyId);
-        claims.put("virtualAccountID", employer.getVirtualAccount().getAccountId());
-        claims.put("companyIds", companyIds);
+        claims.put(CLAIM_COMPANY, companyId);
+        claims.put(CLAIM_VIRTUAL_ACCOUNT, employer.getVirtualAccount().getAccountId());
+        claims.put(CLAIM_EPOCH, tokenEpochService.currentEpoch(employer.getEmployerId()));
 
         return Jwts.builder()
                 .claims(claims)
-                .subject(employer.getUsername())
+                .id(UUID.randomUUID().toString())  // jti, identifies this token in logs
+                .subject(employer.getEmployerId().toString())
                 .issuedAt(new Date(System.currentTimeMillis()))  // Token issue time
                 .expiration(new Date(System.currentTimeMillis() + ACCESS_TOKEN_VALIDITY_TIME))  // Token expiration
                 .signWith(SECRET_KEY)  // Sign the token with the secret key
                 .compact();  // Generate the compact JWT string
     }
 
-    // Generate a refresh token with custom claims
-    public String generateRefreshToken(HashMap<String, Object> claims, Employer employer) {
+    // Generate a refresh token; like the access token its subject is the employer id
+    public String generateRefreshToken(Employer employer) {
         return Jwts.builder()
-                .claims(claims)
-                .subject(employer.getUsername())
+                .claim(CLAIM_EPOCH, tokenEpochService.currentEpoch(employer.getEmployerId()))
+                .id(UUID.randomUUID().toString())
+                .subject(employer.getEmployerId().toString())
                 .issuedAt(new Date(System.currentTimeMillis()))  // Issue time for refresh token
                 .expiration(new Date(System.currentTimeMillis() + REFRESH_TOKEN_VALIDITY_TIME))  // Refresh token expiration
                 .signWith(SECRET_KEY)  // Sign with secret key
                 .compact();
     }
 
-    // Extract claims from the JWT token using a provided function
+    /**
+     * Extract claims from the JWT token using a provided function.
+     * Within a request the parsed claims are kept as a request attribute, so however many times
+     * the same token is read, its signature is verified once.
+     */
     public <T> T extractClaims(String token, Function<Claims, T> claimsTFunction) {
-        return claimsTFunction.apply(Jwts.parser().verifyWith(SECRET_KEY).build().parseSignedClaims(token).getPayload());
-    }
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request == null)
+            return claimsTFunction.apply(parse(token));
 
-    // Extract the username (subject) from the JWT token
-    public String extractUsername(String token) {
-        return extractClaims(token, Claims::getSubject);
-    }
+        if (request.getAttribute(CLAIMS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof ParsedToken parsed
+                && parsed.token().equals(token))
+            return claimsTFunction.apply(parsed.claims());
 
-    // Extract the user ID from the JWT token
-    public String extractID(String token) {
-        // Extract the "userID" claim from the token and return it as a String
-        return extractClaims(token, claims -> claims.get("userID", String.class));
+        Claims claims = parse(token);
+        request.setAttribute(CLAIMS_ATTRIBUTE, new ParsedToken(token, claims), RequestAttributes.SCOPE_REQUEST);
+        return claimsTFunction.apply(claims);
     }
 
-    // Extract the user ID from the JWT token
-    public String extractSubject(String token) {
-        // Extract the "userID" claim from the token and return it as a String
-        return extractClaims(token, claims -> claims.get("subject", String.class));
+    private Claims parse(String token) {
+        return Jwts.parser().verifyWith(SECRET_KEY).build().parseSignedClaims(token).getPayload();
     }
 
-    // Validate token by checking the username and whether the token is expired
-    public boolean isTokenValid(String token, UserDetails userDetails) {
-        Employer employer = new Employer();
-        UUID userId = UUID.fromString(extractID(token));
-        log.info("Employer Id: {}", userId);
-        Optional<Employer> employerOptional = employerRepository.findByEmployerId(userId);
-        if(employerOptional.isPresent()){
-            employer = employerOptional.get();
-        }
-        final String username = employer.getEmailAddress();
-        log.info("Username: {}", username);
-        log.info("Employer: {}", userDetails.getUsername());
-
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+    // Extract the employer ID (subject) from the JWT token
+    public String extractSubject(String token) {
+        return extractClaims(token, Claims::getSubject);
     }
 
-    public boolean isRefreshTokenValid(String token, UserDetails userDetails) {
-        String subject = extractClaims(token, Claims::getSubject);
-        return (subject.equals(userDetails.getUsername()) && !isTokenExpired(token));
+    // Refresh tokens are also rejected once the employer's tokens have been revoked
+    public boolean isRefreshTokenValid(String token, Employer employer) {
+        Claims claims = extractClaims(token, Function.identity());
+        return claims.getSubject().equals(employer.getEmployerId().toString())
+                && !claims.getExpiration().before(new Date())
+                && tokenEpochService.isCurrent(employer.getEmployerId(), claims.get(CLAIM_EPOCH, Number.class));
     }
 
     // Check if the token has expired
     public boolean isTokenExpired(String token) {
         return extractClaims(token, Claims::getExpiration).before(new Date());
     }
-}
\ No newline at end of file
+
+    // Hex SHA-256 of a token, the form in which tokens are stored and looked up
+    public static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -1,26 +1,31 @@
 package com.aalto.paycraft.service;
 
 import com.aalto.paycraft.dto.WebhookResponseDTO;
-import com.aalto.paycraft.dto.WebhookResponseData;
-import com.aalto.paycraft.dto.WebhookResponseDataVba;
+import com.aalto.paycraft.dto.enums.WebhookInboxStatus;
 import com.aalto.paycraft.entity.WebhookData;
-import com.aalto.paycraft.repository.WebhookDataRepository;
+import com.aalto.paycraft.entity.WebhookInbox;
+import com.aalto.paycraft.repository.WebhookInboxRepository;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
 import java.util.Map;
-import java.util.Objects;
 
 @Slf4j @Service @RequiredArgsConstructor
 public class KoraPayWebhook {
@@ -28,74 +33,75 @@ public class KoraPayWebhook {
     @Value("${kora-secret}")
     private String SECRET_KEY;
 
-    private final WebhookDataRepository webhookDataRepository;
+    private final WebhookInboxRepository webhookInboxRepository;
 
-    private static final char[] HEX_ARRAY = "0123456789abcdef".toCharArray();
+    // Plain mapper for reading inbox payloads into WebhookResponseDTO
+    private final ObjectMapper payloadMapper = new ObjectMapper();
 
-    // Convert bytes to hex format
-    private static String bytesToHex(byte[] bytes) {
-        char[] hexChars = new char[bytes.length * 2];
-        for (int j = 0; j < bytes.length; j++) {
-            int v = bytes[j] & 0xFF;
-            hexChars[j * 2] = HEX_ARRAY[v >> 4];
-            hexChars[j * 2 + 1] = HEX_ARRAY[v & 0x0F];
-        }
+    private static final String HMAC_SHA256 = "HmacSHA256";
 
-        return new String(hexChars);
-    }
+    // Mac is not thread safe; each request thread keeps one already initialized with the secret
+    private final ThreadLocal<Mac> webhookMac = ThreadLocal.withInitial(this::newMac);
 
-    // Method to verify the signature
-    public boolean verifySignature(String webhookData, String signature, String korapaySecretKey) {
+    private Mac newMac() {
         try {
-            Mac sha256HMAC = Mac.getInstance("HmacSHA256");
-            SecretKeySpec secretKey = new SecretKeySpec(korapaySecretKey.getBytes("UTF-8"), "HmacSHA256");
-            sha256HMAC.init(secretKey);
-
-            String generatedSignature = bytesToHex(sha256HMAC.doFinal(webhookData.getBytes("UTF-8")));
-
-            log.info("Generated Signature {}", generatedSignature);
-            log.info("Received signature: {}", signature);
-
-
-            // Compare the generated HMAC hex with the signature from Korapay
-            return generatedSignature.equals(signature);
+            Mac mac = Mac.getInstance(HMAC_SHA256);
+            mac.init(new SecretKeySpec(SECRET_KEY.getBytes(StandardCharsets.UTF_8), HMAC_SHA256));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to initialise webhook HMAC", e);
+        }
+    }
 
-        } catch (Exception e) {
-            log.error("An error occurred while verifying the signature", e);
+    /**
+     * Verifies the HMAC-SHA256 signature over bytes [offset, offset + length) of the body.
+     * The received hex signature is decoded and compared in constant time.
+     */
+    public boolean verifySignature(byte[] body, int offset, int length, String signature) {
+        byte[] received;
+        try {
+            received = HexFormat.of().parseHex(signature.trim());
+        } catch (IllegalArgumentException e) {
+            log.warn("Webhook signature is not valid hex");
             return false;
         }
+
+        Mac mac = webhookMac.get();
+        mac.update(body, offset, length);
+        // doFinal also resets the Mac, so the pooled instance is ready for the next webhook
+        return MessageDigest.isEqual(mac.doFinal(), received);
     }
 
-    public String verifyWebHook(WebhookResponseDTO<?> webhookResponseDTO, String signature) throws JsonProcessingException {
-        // Secret key should be managed securely, avoid logging it
-        String secretKey = SECRET_KEY;
+    /**
+     * Verifies the signature and appends the raw event to the webhook inbox.
+     * Processing happens later in WebhookInboxProcessor, so KoraPay is acknowledged immediately.
+     * KoraPay signs the serialized data object, so the HMAC runs over the exact bytes of
+     * the data field as received rather than over a re-serialized copy.
+     */
+    public String verifyWebHook(byte[] rawBody, String signature) throws IOException {
         log.debug("Verifying webhook with provided signature");
 
-        if (webhookResponseDTO == null || signature == null) {
+        if (rawBody == null || signature == null) {
             log.error("Invalid webhook or signature");
             return "Invalid request";
         }
 
-        Object data = webhookResponseDTO.getData();
-        if (data == null) {
+        long[] dataRange = findDataRange(rawBody);
+        if (dataRange == null) {
             log.error("Webhook payload data is null");
             return "Invalid payload";
         }
 
-        // Handle both WebhookResponseData and WebhookResponseDataVba in a unified way
-        String payloadJson = convertPayloadToJson(data);
-        if (payloadJson == null) {
-            log.error("Error converting payload to JSON");
-            return "Invalid payload";
-        }
-
-        log.info("Received payload: {}", payloadJson);
-        boolean isValid = verifySignature(payloadJson, signature, secretKey);
+        int offset = (int) dataRange[0];
+        int length = (int) (dataRange[1] - dataRange[0]);
 
-        if (isValid) {
+        if (verifySignature(rawBody, offset, length, signature)) {
             log.info("Webhook verified successfully");
-            WebhookData webhookData = buildWebhookData(webhookResponseDTO, data);
-            webhookDataRepository.save(webhookData);
+            webhookInboxRepository.save(WebhookInbox.builder()
+                    .payload(new String(rawBody, StandardCharsets.UTF_8))
+                    .status(WebhookInboxStatus.PENDING)
+                    .receivedAt(LocalDateTime.now())
+                    .build());
             return "Webhook verified";
         } else {
             log.warn("Invalid signature detected");
@@ -103,16 +109,38 @@ public class KoraPayWebhook {
         }
     }
 
-    private String convertPayloadToJson(Object data) {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            return objectMapper.writeValueAsString(data);
-        } catch (JsonProcessingException e) {
-            log.error("Error processing JSON for payload: {}", e.getMessage());
+    /**
+     * Streams the top level of the body and returns the byte range [start, end) of the "data" object,
+     * or null if there is none. Other fields are skipped without being materialized.
+     */
+    private long[] findDataRange(byte[] rawBody) throws IOException {
+        try (JsonParser parser = payloadMapper.getFactory().createParser(rawBody)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw new JsonParseException(parser, "Webhook body is not a JSON object");
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+                    long start = parser.currentTokenLocation().getByteOffset();
+                    parser.skipChildren();
+                    // The parser now sits on the closing brace; the range ends just after it
+                    long end = parser.currentTokenLocation().getByteOffset() + 1;
+                    return new long[]{start, end};
+                }
+                parser.skipChildren();
+            }
             return null;
         }
     }
 
+    // Rebuilds the WebhookData for an inbox payload that was verified on receipt
+    public WebhookData toWebhookData(String rawBody) throws JsonProcessingException {
+        WebhookResponseDTO<?> webhookResponseDTO = payloadMapper.readValue(rawBody, WebhookResponseDTO.class);
+        return buildWebhookData(webhookResponseDTO, webhookResponseDTO.getData());
+    }
+
     private WebhookData buildWebhookData(WebhookResponseDTO<?> webhookResponseDTO, Object data) {
         // Parse the 'data' object dynamically as a map (assuming it can be serialized from JSON)
         if (data instanceof Map) {
@@ -0,0 +1,114 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.repository.ClusterLeaseRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Named leases in the cluster_leases table, so singleton jobs run on one node when several are deployed.
+ * A lease is held until it expires; leases held by a running job are renewed in the background, so a node
+ * that dies loses its leases within one TTL and the next node to try takes them over.
+ * Each takeover issues a higher fencing token, which a job can check with {@link #isHeld} before writing.
+ * Expiry is decided by the database clock, not the node's.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LeaseService {
+    private final ClusterLeaseRepository leaseRepository;
+
+    @Value("${cluster.node-id:}")
+    private String configuredNodeId;
+
+    @Getter
+    private String nodeId;
+
+    private record HeldLease(long fencingToken, Duration ttl) {
+    }
+
+    // Leases of jobs running on this node, kept alive by renewHeldLeases
+    private final Map<String, HeldLease> held = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        nodeId = configuredNodeId.isBlank() ? defaultNodeId() : configuredNodeId;
+        log.info("Cluster node id: {}", nodeId);
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        // Distinguishes restarts of the same host, so a restarted node does not inherit its old leases
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * Takes the lease if it is free or expired, or renews it if this node already holds it.
+     * @return the fencing token, or empty if another node holds the lease
+     */
+    public Optional<Long> tryAcquire(String name, Duration ttl) {
+        leaseRepository.acquire(name, nodeId, ttl.toMillis());
+        return leaseRepository.findHeldToken(name, nodeId);
+    }
+
+    // True while this node still holds the lease under the given token
+    public boolean isHeld(String name, long fencingToken) {
+        return leaseRepository.findHeldToken(name, nodeId)
+                .map(token -> token == fencingToken)
+                .orElse(false);
+    }
+
+    public void release(String name, long fencingToken) {
+        held.remove(name);
+        leaseRepository.release(name, nodeId, fencingToken);
+    }
+
+    /**
+     * Runs the job if this node gets the lease, renewing it while the job runs.
+     * The lease is not released afterwards: it lasts out its TTL, so other nodes firing the same schedule skip it.
+     * @return false if another node holds the lease
+     */
+    public boolean runExclusively(String name, Duration ttl, LongConsumer job) {
+        Optional<Long> token = tryAcquire(name, ttl);
+        if (token.isEmpty()) {
+            log.debug("Lease {} is held by another node, skipping", name);
+            return false;
+        }
+
+        held.put(name, new HeldLease(token.get(), ttl));
+        try {
+            job.accept(token.get());
+        } finally {
+            held.remove(name);
+        }
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${cluster.lease.renew-ms:10000}")
+    public void renewHeldLeases() {
+        held.forEach((name, lease) -> {
+            if (leaseRepository.renew(name, nodeId, lease.fencingToken(), lease.ttl().toMillis()) == 0) {
+                // The job keeps running, but isHeld now fails for its token
+                held.remove(name);
+                log.warn("Lost lease {} (token {})", name, lease.fencingToken());
+            }
+        });
+    }
+}
@@ -0,0 +1,95 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.dto.enums.LedgerEntryType;
+import com.aalto.paycraft.entity.LedgerEntry;
+import com.aalto.paycraft.entity.Payment;
+import com.aalto.paycraft.entity.VirtualAccount;
+import com.aalto.paycraft.repository.LedgerEntryRepository;
+import com.aalto.paycraft.repository.PaymentRepository;
+import com.aalto.paycraft.repository.VirtualAccountRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * The only place virtual account balances change.
+ * Each posting applies one conditional UPDATE to the account row, appends a LedgerEntry and records
+ * the Payment shown in the transaction history, all in one transaction. Contention is limited to the
+ * row of the account being posted to.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LedgerService {
+    private final VirtualAccountRepository virtualAccountRepository;
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final PaymentRepository paymentRepository;
+
+    /**
+     * Credits the account and records the payment.
+     * Posting a reference that is already in the ledger throws DataIntegrityViolationException and changes nothing.
+     */
+    @Transactional
+    public Payment credit(VirtualAccount account, Payment payment) {
+        if (virtualAccountRepository.credit(account.getAccountId(), payment.getAmount()) == 0)
+            throw new RuntimeException("Virtual account not found: " + account.getAccountId());
+
+        return post(account, payment, LedgerEntryType.CREDIT);
+    }
+
+    /**
+     * Debits the account and records the payment, or returns empty if the balance does not cover the amount.
+     * Posting a reference that is already in the ledger throws DataIntegrityViolationException and changes nothing.
+     */
+    @Transactional
+    public Optional<Payment> debit(VirtualAccount account, Payment payment) {
+        if (virtualAccountRepository.debit(account.getAccountId(), payment.getAmount()) == 0) {
+            log.info("Insufficient funds on account {} for {}", account.getAccountId(), payment.getReferenceNumber());
+            return Optional.empty();
+        }
+
+        return Optional.of(post(account, payment, LedgerEntryType.DEBIT));
+    }
+
+    // True if a debit under the reference has been posted, e.g. the reservation of a payout
+    public boolean isDebited(String reference) {
+        return ledgerEntryRepository.existsByReferenceAndEntryType(reference, LedgerEntryType.DEBIT);
+    }
+
+    // True if a credit under the reference has been posted, e.g. the reversal of a payout
+    public boolean isCredited(String reference) {
+        return ledgerEntryRepository.existsByReferenceAndEntryType(reference, LedgerEntryType.CREDIT);
+    }
+
+    // Current balance straight from the account row
+    public BigDecimal balanceOf(VirtualAccount account) {
+        return virtualAccountRepository.findBalanceByAccountId(account.getAccountId())
+                .orElseThrow(() -> new RuntimeException("Virtual account not found: " + account.getAccountId()));
+    }
+
+    private Payment post(VirtualAccount account, Payment payment, LedgerEntryType entryType) {
+        // The row is locked by the update above, so this reads the balance this entry produced
+        BigDecimal balanceAfter = balanceOf(account);
+
+        // Flushed here so a duplicate reference fails inside this transaction and rolls back the balance update
+        ledgerEntryRepository.saveAndFlush(LedgerEntry.builder()
+                .accountId(account.getAccountId())
+                .entryType(entryType)
+                .amount(payment.getAmount())
+                .balanceAfter(balanceAfter)
+                .reference(payment.getReferenceNumber())
+                .description(payment.getDescription())
+                .createdAt(LocalDateTime.now())
+                .build());
+
+        account.setBalance(balanceAfter);
+        payment.setAccount(account);
+        payment.setTransactionType(entryType.name());
+        return paymentRepository.save(payment);
+    }
+}
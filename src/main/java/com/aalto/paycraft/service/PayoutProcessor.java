@@ -0,0 +1,475 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.dto.*;
+import com.aalto.paycraft.dto.enums.PayrollRunChunkStatus;
+import com.aalto.paycraft.entity.*;
+import com.aalto.paycraft.repository.*;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static com.aalto.paycraft.dto.enums.PayoutStatus.*;
+
+/**
+ * Background worker that drives payouts through their states.
+ * Requests only enqueue a Payout; submission to KoraPay happens here on the payout executor,
+ * and transfer webhooks move PROCESSING payouts to SUCCEEDED or FAILED.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PayoutProcessor {
+    private final PayoutRepository payoutRepository;
+    private final EmployeeRepository employeeRepository;
+    private final EmployerRepository employerRepository;
+    private final PayrollRepository payrollRepository;
+    private final VirtualAccountRepository virtualAccountRepository;
+    private final PaymentRepository paymentRepository;
+    private final LedgerService ledgerService;
+    private final WebhookDataRepository webhookDataRepository;
+    private final IKoraPayService koraPayService;
+    private final BankDirectory bankDirectory;
+    private final PayrollRunService payrollRunService;
+    private final BulkPayoutSubmitter bulkPayoutSubmitter;
+
+    @Qualifier("payoutExecutor")
+    private final Executor payoutExecutor;
+
+    @Value("${payout.stale-after-ms:60000}")
+    private long staleAfterMillis;
+
+    @Value("${payout.reconcile-after-ms:300000}")
+    private long reconcileAfterMillis;
+
+    // Hands the payout to a worker; the request thread returns immediately
+    public void submit(UUID payoutId) {
+        payoutExecutor.execute(() -> process(payoutId));
+    }
+
+    public void process(UUID payoutId) {
+        // Claim the payout; another worker or a sweep may already have it
+        if (payoutRepository.transition(payoutId, QUEUED, SUBMITTED, LocalDateTime.now()) == 0) {
+            log.debug("Payout {} already claimed", payoutId);
+            return;
+        }
+
+        Payout payout = payoutRepository.findById(payoutId)
+                .orElseThrow(() -> new RuntimeException("Payout not found: " + payoutId));
+        try {
+            if (payout.getPayrollId() == null)
+                submitSingle(payout);
+            else
+                submitBulk(payout);
+        } catch (Exception e) {
+            log.error("Error submitting payout {}: {}", payoutId, e.getMessage());
+            fail(payout, e.getMessage());
+        }
+    }
+
+    private void submitSingle(Payout payout) throws Exception {
+        Employee employee = employeeRepository.findByEmployeeId(payout.getEmployeeId())
+                .orElseThrow(() -> new RuntimeException("Employee not found"));
+        Employer employer = fetchEmployer(payout.getEmployerId());
+        VirtualAccount virtualAccount = fetchVirtualAccount(payout.getEmployerId());
+
+        // Get bank code based on employee's bank name (e.g., "United Bank of Africa")
+        String bankCode = bankDirectory.getBankCode(employee.getBankName());
+
+        // Resolve bank account using bank code and account number
+        DefaultKoraResponse<BankAccountDTO> resolveResponse = koraPayService.resolveBankAccount(bankCode, employee.getAccountNumber());
+        if (!"Request completed".equals(resolveResponse.getMessage())) {
+            fail(payout, "Account Number could not be resolved");
+            return;
+        }
+
+        // Ensure the resolved account matches the employee's account
+        if (!resolveResponse.getData().getAccount_number().equalsIgnoreCase(employee.getAccountNumber())) {
+            fail(payout, "Account Number resolved does not match");
+            return;
+        }
+
+        // The transfer is sent under the payout id, so it can be matched to its webhook even if KoraPay never answers
+        payout.setReference(payout.getPayoutId().toString());
+        payoutRepository.save(payout);
+
+        // Reserve the funds before any money leaves; the debit only succeeds if the balance covers it
+        Optional<Payment> reserved = reserve(virtualAccount, payout, "Employee Payment",
+                null, String.format("%s %s", employee.getFirstName(), employee.getLastName()));
+        if (reserved.isEmpty()) {
+            fail(payout, "Insufficient funds to make this payment: Balance is " + ledgerService.balanceOf(virtualAccount));
+            return;
+        }
+
+        DefaultKoraResponse<PayoutResponseDTO> payoutResponse;
+        try {
+            payoutResponse = koraPayService.requestPayout(payout.getReference(), bankCode, employee.getAccountNumber(), payout.getAmount(), employer);
+        } catch (Exception e) {
+            if (IKoraPayAsyncService.neverSent(e)) {
+                release(virtualAccount, payout);
+                throw e;
+            }
+            // The transfer may have been made, so the reservation stays until the webhook or the sweep settles it
+            log.warn("No answer for payout {}, waiting for its webhook: {}", payout.getPayoutId(), e.getMessage());
+            payout.setStatus(PROCESSING);
+            payoutRepository.save(payout);
+            return;
+        }
+
+        if (!"Transfer initiated successfully.".equals(payoutResponse.getMessage())) {
+            release(virtualAccount, payout);
+            fail(payout, "Payout request failed: " + payoutResponse.getMessage());
+            return;
+        }
+
+        // Provider accepted: wait for the transfer webhook
+        PayoutResponseDTO data = payoutResponse.getData();
+        if (data.getReference() != null)
+            payout.setReference(data.getReference());
+        payout.setStatus(PROCESSING);
+        payoutRepository.save(payout);
+
+        recordProviderReference(reserved.get(), payout.getReference(), data.getNarration());
+        log.info("Payout {} submitted for employee: {}", payout.getPayoutId(), employee.getFirstName());
+    }
+
+    private void submitBulk(Payout payout) throws Exception {
+        Payroll payroll = payrollRepository.findById(payout.getPayrollId())
+                .orElseThrow(() -> new RuntimeException("Payroll not found"));
+        Employer employer = fetchEmployer(payout.getEmployerId());
+        VirtualAccount virtualAccount = fetchVirtualAccount(payout.getEmployerId());
+
+        // Payouts queued before payroll runs existed get their run now
+        if (payout.getPayrollRunId() == null) {
+            PayrollRun run = payrollRunService.startRun(payroll);
+            payout.setPayrollRunId(run.getRunId());
+            payout.setAmount(run.getTotalAmount());
+            payoutRepository.save(payout);
+        }
+
+        // Reserve the salaries before any chunk is sent
+        Optional<Payment> reserved = reserve(virtualAccount, payout, "Payroll Payment", payroll.getPayrollName(), null);
+        if (reserved.isEmpty()) {
+            fail(payout, "Insufficient funds to run this payroll: Balance is " + ledgerService.balanceOf(virtualAccount));
+            return;
+        }
+
+        sendBulk(payout, employer, virtualAccount, reserved.get());
+    }
+
+    // Sends the run's unsent chunks, then settles the payout from the outcome of all of its chunks
+    private void sendBulk(Payout payout, Employer employer, VirtualAccount virtualAccount, Payment reserved) {
+        BulkPayoutSubmitter.Result result;
+        try {
+            result = bulkPayoutSubmitter.submit(payout.getPayrollRunId(), employer,
+                    () -> payoutRepository.touch(payout.getPayoutId(), SUBMITTED, LocalDateTime.now()));
+        } catch (Exception e) {
+            // Chunks may already have gone out, so nothing is given back; the payout stays SUBMITTED for the sweep
+            log.error("Error submitting bulk payout {}: {}", payout.getPayoutId(), e.getMessage());
+            return;
+        }
+
+        if (result.nothingSent()) {
+            release(virtualAccount, payout);
+            fail(payout, result.lastFailure());
+            return;
+        }
+
+        // Salaries of chunks that were never sent go back to the account; the payout covers the rest.
+        // Kept apart from the full reversal's key, which a payout that is later released or refunded uses
+        if (result.failedChunks() > 0) {
+            ledgerService.credit(virtualAccount, Payment.builder()
+                    .referenceNumber(payout.getPayoutId() + "-chunks-reversal")
+                    .amount(result.failedAmount())
+                    .transactionDateTime(LocalDateTime.now())
+                    .description("Payout Reversal")
+                    .currency(payout.getCurrency())
+                    .build());
+            payout.setAmount(result.sentAmount());
+            payout.setFailureReason(result.failedChunks() + " of " + result.chunks() + " chunks failed: " + result.lastFailure());
+        }
+
+        // No chunk may have been accepted outright (e.g. every request timed out), so fall back to the payout id
+        payout.setReference(result.reference() != null ? result.reference() : payout.getPayoutId().toString());
+
+        // Item webhooks carry per-transfer references and settle the run items, so an accepted batch is treated as
+        // settled. Until every unconfirmed chunk's items have settled the payout stays PROCESSING
+        payout.setStatus(result.unconfirmedChunks() > 0 ? PROCESSING : SUCCEEDED);
+        payoutRepository.save(payout);
+        payrollRunService.finishSubmission(payout.getPayrollRunId());
+
+        if (reserved != null)
+            recordProviderReference(reserved, payout.getReference(), null);
+        adjustForCharges(virtualAccount, payout, result.chargeableAmount());
+        log.info("Bulk payout {} submitted for run {} ({})", payout.getPayoutId(), payout.getPayrollRunId(), payout.getStatus());
+    }
+
+    /**
+     * Applies a transfer webhook to the single payout it belongs to.
+     * Conditional transitions make repeated webhooks harmless.
+     */
+    public void onWebhook(WebhookData webhookData) {
+        if (webhookData.getEvent() == null || !webhookData.getEvent().startsWith("transfer."))
+            return;
+
+        Optional<Payout> optionalPayout = payoutRepository.findByReference(webhookData.getReference());
+        if (optionalPayout.isEmpty())
+            return;
+
+        Payout payout = optionalPayout.get();
+        // A run's items are settled one by one by PayrollRunService, which credits back each failed item;
+        // the sweep settles the payout once its run has finished
+        if (payout.getPayrollRunId() != null)
+            return;
+
+        if (webhookData.getEvent().equals("transfer.success")) {
+            if (payoutRepository.transition(payout.getPayoutId(), PROCESSING, SUCCEEDED, LocalDateTime.now()) == 1)
+                log.info("Payout {} succeeded", payout.getPayoutId());
+        } else if (webhookData.getEvent().equals("transfer.failed")) {
+            if (payoutRepository.transition(payout.getPayoutId(), PROCESSING, FAILED, LocalDateTime.now()) == 1) {
+                log.warn("Payout {} failed at provider, refunding", payout.getPayoutId());
+                refund(payout);
+            }
+        }
+    }
+
+    /**
+     * Recovers payouts whose in-memory work was lost (e.g. restart),
+     * PROCESSING payouts whose webhook arrived before the reference was saved,
+     * and bulk payouts whose unconfirmed chunks have since settled.
+     * Payouts that have not moved for reconcile-after-ms are checked against KoraPay by the reference they were sent under.
+     */
+    @Scheduled(fixedDelayString = "${payout.sweep-ms:30000}")
+    public void sweep() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime staleBefore = now.minus(Duration.ofMillis(staleAfterMillis));
+        LocalDateTime reconcileBefore = now.minus(Duration.ofMillis(reconcileAfterMillis));
+
+        for (Payout payout : payoutRepository.findAllByStatusUpdatedBefore(QUEUED, staleBefore))
+            submit(payout.getPayoutId());
+
+        // A live submission keeps touching its payout, so only one whose worker died gets this old
+        for (Payout payout : payoutRepository.findAllByStatusUpdatedBefore(SUBMITTED, reconcileBefore))
+            reconcile(payout, reconcileBefore);
+
+        for (Payout payout : payoutRepository.findAllByStatusUpdatedBefore(PROCESSING, staleBefore)) {
+            if (payout.getPayrollRunId() != null && payrollRunService.isFinished(payout.getPayrollRunId())) {
+                // A bulk payout left PROCESSING by unconfirmed chunks is done once every item of its run has settled
+                if (payoutRepository.transition(payout.getPayoutId(), PROCESSING, SUCCEEDED, LocalDateTime.now()) == 1)
+                    log.info("Bulk payout {} settled", payout.getPayoutId());
+                continue;
+            }
+
+            Optional<WebhookData> webhookData = payout.getPayrollRunId() == null
+                    ? webhookDataRepository.findFirstByReferenceOrderByIdDesc(payout.getReference())
+                    : Optional.empty();
+            if (webhookData.isPresent())
+                onWebhook(webhookData.get());
+            else if (payout.getUpdatedAt().isBefore(reconcileBefore))
+                reconcile(payout, reconcileBefore);
+        }
+    }
+
+    /*
+     * Settles a payout that has waited too long, by asking KoraPay about the references it was sent under.
+     * The claim moves updatedAt on, so one node handles it and it is not looked at again for reconcile-after-ms.
+     */
+    private void reconcile(Payout payout, LocalDateTime before) {
+        if (payoutRepository.claimStale(payout.getPayoutId(), payout.getStatus(), before, LocalDateTime.now()) == 0)
+            return;
+
+        try {
+            // Nothing is sent before the reservation, so without one the payout can simply be queued again
+            if (!ledgerService.isDebited(payout.getPayoutId().toString())) {
+                if (payout.getStatus() == SUBMITTED
+                        && payoutRepository.transition(payout.getPayoutId(), SUBMITTED, QUEUED, LocalDateTime.now()) == 1) {
+                    log.info("Payout {} was never sent, queued again", payout.getPayoutId());
+                    submit(payout.getPayoutId());
+                }
+                return;
+            }
+
+            if (payout.getPayrollRunId() == null)
+                reconcileSingle(payout);
+            else
+                reconcileBulk(payout);
+        } catch (Exception e) {
+            // Tried again once the payout is due for reconciliation again
+            log.error("Could not reconcile payout {}: {}", payout.getPayoutId(), e.getMessage());
+        }
+    }
+
+    private void reconcileSingle(Payout payout) throws Exception {
+        if (payout.getReference() == null) {
+            log.error("Payout {} was reserved without a reference and needs manual reconciliation", payout.getPayoutId());
+            return;
+        }
+
+        PayoutResponseDTO data = koraPayService.getPayout(payout.getReference()).getData();
+        String status = data == null ? "not_found" : String.valueOf(data.getStatus());
+        switch (status) {
+            case "success" -> {
+                if (payoutRepository.transition(payout.getPayoutId(), payout.getStatus(), SUCCEEDED, LocalDateTime.now()) == 1)
+                    log.info("Payout {} succeeded (reconciled)", payout.getPayoutId());
+            }
+            case "failed", "not_found" -> {
+                if (payoutRepository.transition(payout.getPayoutId(), payout.getStatus(), FAILED, LocalDateTime.now()) == 1) {
+                    log.warn("Payout {} {} at provider, refunding", payout.getPayoutId(),
+                            data == null ? "was never received" : "failed");
+                    refund(payout);
+                }
+            }
+            default -> {
+                // Still in progress at KoraPay; its webhook or a later sweep settles it
+                if (payout.getStatus() == SUBMITTED)
+                    payoutRepository.transition(payout.getPayoutId(), SUBMITTED, PROCESSING, LocalDateTime.now());
+            }
+        }
+    }
+
+    /*
+     * Asks KoraPay about each chunk that was not confirmed: a chunk it knows is accepted; an unconfirmed chunk
+     * it never received fails. A payout whose worker died part way then sends its remaining chunks and settles.
+     * Once the payout is PROCESSING nothing more is sent, so a PENDING chunk KoraPay does not know fails too.
+     */
+    private void reconcileBulk(Payout payout) throws Exception {
+        VirtualAccount virtualAccount = fetchVirtualAccount(payout.getEmployerId());
+
+        for (PayrollRunChunk chunk : payrollRunService.chunksOf(payout.getPayrollRunId())) {
+            boolean unconfirmed = chunk.getStatus() == PayrollRunChunkStatus.UNCONFIRMED;
+            if ((!unconfirmed && chunk.getStatus() != PayrollRunChunkStatus.PENDING) || chunk.getBatchReference() == null)
+                continue;
+
+            BulkPayoutResponseDTO data = koraPayService.getBulkPayout(chunk.getBatchReference()).getData();
+            if (data != null) {
+                payrollRunService.chunkAccepted(chunk, chunk.getBatchReference(), data.getTotal_chargeable_amount());
+            } else if (unconfirmed || payout.getStatus() == PROCESSING) {
+                payrollRunService.chunkNotReceived(chunk);
+                // A settled payout has already been charged for the chunk, so its salaries go back now
+                if (payout.getStatus() == PROCESSING)
+                    ledgerService.credit(virtualAccount, Payment.builder()
+                            .referenceNumber(payout.getPayoutId() + "-chunk-" + chunk.getChunkNo() + "-reversal")
+                            .amount(chunk.getAmount())
+                            .transactionDateTime(LocalDateTime.now())
+                            .description("Payout Reversal")
+                            .currency(payout.getCurrency())
+                            .build());
+            }
+            // A PENDING chunk KoraPay never received is simply sent below
+        }
+
+        if (payout.getStatus() == SUBMITTED) {
+            log.info("Resuming bulk payout {}", payout.getPayoutId());
+            sendBulk(payout, fetchEmployer(payout.getEmployerId()), virtualAccount,
+                    paymentRepository.findByReferenceNumber(payout.getPayoutId().toString()).orElse(null));
+        } else if (payrollRunService.isFinished(payout.getPayrollRunId())
+                && payoutRepository.transition(payout.getPayoutId(), PROCESSING, SUCCEEDED, LocalDateTime.now()) == 1) {
+            log.info("Bulk payout {} settled", payout.getPayoutId());
+        }
+    }
+
+    private void fail(Payout payout, String reason) {
+        payout.setStatus(FAILED);
+        payout.setFailureReason(reason);
+        payoutRepository.save(payout);
+        if (payout.getPayrollRunId() != null)
+            payrollRunService.markFailed(payout.getPayrollRunId(), reason);
+        log.warn("Payout {} failed: {}", payout.getPayoutId(), reason);
+    }
+
+    // Debits the payout amount under the payout id, so a resubmitted payout cannot reserve twice
+    private Optional<Payment> reserve(VirtualAccount virtualAccount, Payout payout, String description,
+                                      String payrollName, String employeeName) {
+        return ledgerService.debit(virtualAccount, Payment.builder()
+                .referenceNumber(payout.getPayoutId().toString())
+                .amount(payout.getAmount())
+                .transactionDateTime(LocalDateTime.now())
+                .description(description)
+                .currency(payout.getCurrency())
+                .payrollName(payrollName)
+                .employeeName(employeeName)
+                .build());
+    }
+
+    // The history shows the provider reference once KoraPay has accepted the transfer
+    private void recordProviderReference(Payment payment, String reference, String description) {
+        payment.setReferenceNumber(reference);
+        if (description != null)
+            payment.setDescription(description);
+        paymentRepository.save(payment);
+    }
+
+    // Bulk payouts are charged the provider total, which includes fees on top of the reserved salaries
+    private void adjustForCharges(VirtualAccount virtualAccount, Payout payout, BigDecimal chargeable) {
+        if (chargeable == null)
+            return;
+
+        BigDecimal difference = chargeable.subtract(payout.getAmount());
+        if (difference.signum() == 0)
+            return;
+
+        Payment adjustment = Payment.builder()
+                .referenceNumber(payout.getReference() + "-charges")
+                .amount(difference.abs())
+                .transactionDateTime(LocalDateTime.now())
+                .description("Payout Charges")
+                .currency(payout.getCurrency())
+                .build();
+
+        if (difference.signum() < 0)
+            ledgerService.credit(virtualAccount, adjustment);
+        else if (ledgerService.debit(virtualAccount, adjustment).isEmpty())
+            log.error("Could not collect charges of {} for payout {}", difference, payout.getPayoutId());
+
+        payout.setAmount(chargeable);
+        payoutRepository.save(payout);
+    }
+
+    // Returns a reservation whose payout never reached the provider
+    private void release(VirtualAccount virtualAccount, Payout payout) {
+        ledgerService.credit(virtualAccount, reversalOf(payout));
+    }
+
+    /*
+     * Checked before posting rather than by catching the duplicate: webhooks are applied inside the inbox's
+     * transaction, which a failed credit would mark rollback-only along with the payout's transition.
+     */
+    private void refund(Payout payout) {
+        Payment reversal = reversalOf(payout);
+        if (ledgerService.isCredited(reversal.getReferenceNumber())) {
+            // Released before a crash left the payout unsettled
+            log.info("Payout {} was already refunded", payout.getPayoutId());
+            return;
+        }
+        ledgerService.credit(fetchVirtualAccount(payout.getEmployerId()), reversal);
+    }
+
+    private Payment reversalOf(Payout payout) {
+        return Payment.builder()
+                .referenceNumber(payout.getPayoutId() + "-reversal")
+                .amount(payout.getAmount())
+                .transactionDateTime(LocalDateTime.now())
+                .description("Payout Reversal")
+                .currency(payout.getCurrency())
+                .build();
+    }
+
+    private Employer fetchEmployer(UUID employerId) {
+        return employerRepository.findByEmployerId(employerId)
+                .orElseThrow(() -> new RuntimeException("Employer not found"));
+    }
+
+    private VirtualAccount fetchVirtualAccount(UUID employerId) {
+        return virtualAccountRepository.findByEmployer_EmployerId(employerId)
+                .orElseThrow(() -> new RuntimeException("Virtual account not found"));
+    }
+}
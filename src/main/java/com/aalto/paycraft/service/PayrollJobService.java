@@ -1,7 +1,9 @@
 package com.aalto.paycraft.service;
 
-import com.aalto.paycraft.dto.BulkPayoutResponseDTO;
+import com.aalto.paycraft.config.TenantContext;
+import com.aalto.paycraft.config.TenantContextHolder;
 import com.aalto.paycraft.dto.DefaultApiResponse;
+import com.aalto.paycraft.dto.PayoutDTO;
 import com.aalto.paycraft.dto.enums.PaymentStatus;
 import com.aalto.paycraft.entity.Payroll;
 import com.aalto.paycraft.repository.PayrollRepository;
@@ -9,27 +11,39 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
-import org.springframework.scheduling.TaskScheduler;
-import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.thymeleaf.context.Context;
 
+import java.time.Duration;
 import java.time.LocalDate;
-import java.util.HashMap;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ScheduledFuture;
 
+/**
+ * Runs automatic payrolls. Each payroll's next due time is kept in Payroll.nextRunAt, and a poller on every
+ * node claims due payrolls in batches with SELECT ... FOR UPDATE SKIP LOCKED. Claiming moves nextRunAt to the
+ * following cron time in the same transaction, so each due run is claimed by exactly one node.
+ * Claimed payrolls run on FairPayrollExecutor, which takes turns between companies. The poller claims no more
+ * payrolls than there are free workers, so a run lost with its node is one that had already started; the rest
+ * stay due in the database for any node to claim.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class PayrollJobService implements CommandLineRunner {
-    private final TaskScheduler taskScheduler;
     private final IPaymentService paymentService;
     private final PayrollRepository payrollRepository;
-    private final Map<UUID, ScheduledFuture<?>> scheduledFutureMap = new HashMap<>();
     private final IEmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final LeaseService leaseService;
+
+    private final FairPayrollExecutor fairPayrollExecutor;
 
     @Value("${spring.mail.enable}")
     private Boolean enableEmail;
@@ -37,59 +51,143 @@ public class PayrollJobService implements CommandLineRunner {
     @Value("${frontend.url}")
     private String frontendUrl;
 
+    @Value("${payroll.poller.batch-size:100}")
+    private int batchSize;
+
+    @Value("${payroll.poller.batches-per-poll:10}")
+    private int batchesPerPoll;
+
+    @Value("${cluster.lease.ttl-ms:60000}")
+    private long leaseTtlMillis;
+
     @Override
     public void run(String... args) throws Exception {
-        initializePayrollJobs();
+        // Totals must be in place before any payroll runs; this also backfills rows created before they existed.
+        // Only one node needs to do this when several start together
+        leaseService.runExclusively("payroll-init", Duration.ofMillis(leaseTtlMillis), token -> {
+            recomputeTotals();
+            scheduleUnscheduledPayrolls();
+        });
     }
 
     /**
-     * Initializes and schedules payroll jobs from the database at startup.
+     * Recomputes totalSalary and employeeCount for every payroll from its members.
+     * Totals are maintained incrementally, so this only corrects drift (e.g. changes made outside the API).
      */
-    public void initializePayrollJobs() {
-        List<Payroll> payrollList = payrollRepository.findAllWhereAutomaticIsTrue();
-
-        payrollList.forEach(payroll -> {
-            // Check if the job is already scheduled to avoid duplicates
-            if (!scheduledFutureMap.containsKey(payroll.getPayrollId())) {
-                schedulePayroll(payroll);
-            } else {
-                log.info("Payroll job {} is already scheduled, skipping.", payroll.getPayrollId());
+    @Scheduled(cron = "${payroll.totals-repair-cron:0 0 2 * * *}")
+    public void repairPayrollTotals() {
+        leaseService.runExclusively("payroll-totals-repair", Duration.ofMillis(leaseTtlMillis), token -> recomputeTotals());
+    }
+
+    private void recomputeTotals() {
+        int updated = payrollRepository.recomputeTotals();
+        log.info("Recomputed totals for payrolls, {} rows changed", updated);
+    }
+
+    /**
+     * Sets nextRunAt for automatic payrolls that do not have one yet, a page at a time.
+     */
+    public void scheduleUnscheduledPayrolls() {
+        int scheduled = 0;
+        UUID afterId = new UUID(0, 0);
+        List<Object[]> page;
+        do {
+            page = payrollRepository.findUnscheduledAutomatic(afterId, PageRequest.of(0, batchSize));
+            for (Object[] row : page) {
+                afterId = (UUID) row[0];
+                LocalDateTime nextRunAt = nextRunAfter(afterId, (String) row[1], LocalDateTime.now());
+                if (nextRunAt != null && payrollRepository.updateNextRunAt(afterId, nextRunAt) > 0)
+                    scheduled++;
             }
-        });
+        } while (page.size() == batchSize);
 
-        log.info("Initialized {} payroll jobs", payrollList.size());
+        log.info("Scheduled {} automatic payrolls", scheduled);
     }
 
     /**
-     * Schedules a payroll job based on its cron expression.
+     * Sets the payroll's next run from its cron expression, or clears it if the payroll is not automatic.
      * @param payroll The payroll entity to be scheduled.
      */
     public void schedulePayroll(Payroll payroll) {
-        // Cancel any existing scheduled job for this payroll
-        cancelScheduledPayroll(payroll.getPayrollId());
-
-        if (payroll.getCronExpression() != null && !payroll.getCronExpression().isEmpty()) {
-            try {
-                log.info("Scheduling payroll job {} with cron expression: {}", payroll.getPayrollId(), payroll.getCronExpression());
-                CronTrigger cronTrigger = new CronTrigger(payroll.getCronExpression());
-                ScheduledFuture<?> scheduledTask = taskScheduler.schedule(() -> processPayroll(payroll), cronTrigger);
-                scheduledFutureMap.put(payroll.getPayrollId(), scheduledTask);
-            } catch (Exception e) {
-                log.error("Invalid cron expression for payroll {}: {}", payroll.getPayrollId(), payroll.getCronExpression(), e);
-            }
-        }
+        LocalDateTime nextRunAt = Boolean.TRUE.equals(payroll.getAutomatic())
+                ? nextRunAfter(payroll.getPayrollId(), payroll.getCronExpression(), LocalDateTime.now())
+                : null;
+        payrollRepository.updateNextRunAt(payroll.getPayrollId(), nextRunAt);
+        payroll.setNextRunAt(nextRunAt);
+        log.info("Payroll {} next runs at {}", payroll.getPayrollId(), nextRunAt);
     }
 
     /**
-     * Cancels a scheduled payroll job.
-     * @param payrollId The ID of the payroll job to cancel.
+     * Stops a payroll from running automatically.
+     * @param payrollId The ID of the payroll to unschedule.
      */
     public void cancelScheduledPayroll(UUID payrollId) {
-        ScheduledFuture<?> scheduledTask = scheduledFutureMap.get(payrollId);
-        if (scheduledTask != null && !scheduledTask.isCancelled()) {
-            scheduledTask.cancel(true);
-            scheduledFutureMap.remove(payrollId);
-            log.info("Cancelled payroll job with ID: {}", payrollId);
+        payrollRepository.updateNextRunAt(payrollId, null);
+        log.info("Cancelled payroll job with ID: {}", payrollId);
+    }
+
+    /**
+     * Claims due payrolls and queues them by company, up to batchesPerPoll batches per poll.
+     */
+    @Scheduled(fixedDelayString = "${payroll.poller.poll-ms:10000}")
+    public void runDuePayrolls() {
+        for (int batch = 0; batch < batchesPerPoll; batch++) {
+            // Claiming moves nextRunAt on, so only claim what a free worker can start on
+            int limit = Math.min(batchSize, fairPayrollExecutor.remainingCapacity());
+            if (limit == 0) {
+                log.info("Payroll workers busy, leaving due payrolls for the next poll");
+                return;
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            List<Object[]> claimed = claimDuePayrolls(now, limit);
+            for (Object[] row : claimed) {
+                UUID payrollId = (UUID) row[0];
+                if (!fairPayrollExecutor.submit((UUID) row[1], () -> runClaimedPayroll(payrollId))) {
+                    // Make it due again so this or another node claims it on a later poll
+                    payrollRepository.releaseClaim(payrollId, (LocalDateTime) row[2], now);
+                    log.warn("Payroll workers busy, payroll {} left for the next poll", payrollId);
+                }
+            }
+            if (claimed.size() < limit)
+                return;
+        }
+    }
+
+    // The row locks are held only while nextRunAt is moved on; the payroll itself runs after commit.
+    // Returns (payrollId, companyId, nextRunAt) for each payroll claimed
+    private List<Object[]> claimDuePayrolls(LocalDateTime now, int limit) {
+        return transactionTemplate.execute(status -> {
+            List<Object[]> claimed = new ArrayList<>();
+            for (Object[] row : payrollRepository.lockDuePayrolls(now, limit)) {
+                UUID payrollId = UUID.fromString((String) row[0]);
+                LocalDateTime nextRunAt = nextRunAfter(payrollId, (String) row[1], now);
+                payrollRepository.updateNextRunAt(payrollId, nextRunAt);
+                // An expression that no longer parses is unscheduled rather than run
+                if (nextRunAt != null)
+                    claimed.add(new Object[]{payrollId, UUID.fromString((String) row[2]), nextRunAt});
+            }
+            return claimed;
+        });
+    }
+
+    private void runClaimedPayroll(UUID payrollId) {
+        payrollRepository.findById(payrollId).ifPresent(payroll -> {
+            // Scheduled runs have no request, so they act as the company that owns the payroll
+            TenantContext owner = TenantContext.of(
+                    payroll.getCompany().getEmployer().getEmployerId(), payroll.getCompany().getCompanyId());
+            TenantContextHolder.runAs(owner, () -> processPayroll(payroll));
+        });
+    }
+
+    private static LocalDateTime nextRunAfter(UUID payrollId, String cronExpression, LocalDateTime after) {
+        if (cronExpression == null || cronExpression.isEmpty())
+            return null;
+        try {
+            return CronExpression.parse(cronExpression).next(after);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid cron expression for payroll {}: {}", payrollId, cronExpression);
+            return null;
         }
     }
 
@@ -104,7 +202,7 @@ public class PayrollJobService implements CommandLineRunner {
             payroll.setLastRunDate(LocalDate.now());
 
             // Calls the payment service to pay the employees in the payroll.
-            DefaultApiResponse<BulkPayoutResponseDTO> request = paymentService.payEmployeesBulk(payroll.getPayrollId());
+            DefaultApiResponse<PayoutDTO> request = paymentService.payEmployeesBulk(payroll.getPayrollId());
 
             apiResponse.setStatusCode(request.getStatusCode());
             apiResponse.setStatusMessage(request.getStatusMessage());
@@ -129,9 +227,6 @@ public class PayrollJobService implements CommandLineRunner {
         } finally {
             payroll.setPayPeriodEnd(LocalDate.now());
             payrollRepository.save(payroll);
-
-            // Clean up: remove completed job from map if no longer needed
-            cancelScheduledPayroll(payroll.getPayrollId());
         }
 
         return apiResponse;
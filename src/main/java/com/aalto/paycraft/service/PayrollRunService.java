@@ -0,0 +1,295 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.dto.PayoutData;
+import com.aalto.paycraft.dto.enums.PayrollRunChunkStatus;
+import com.aalto.paycraft.dto.enums.PayrollRunItemStatus;
+import com.aalto.paycraft.dto.enums.PayrollRunStatus;
+import com.aalto.paycraft.entity.Payment;
+import com.aalto.paycraft.entity.Payout;
+import com.aalto.paycraft.entity.Payroll;
+import com.aalto.paycraft.entity.PayrollRun;
+import com.aalto.paycraft.entity.PayrollRunChunk;
+import com.aalto.paycraft.entity.PayrollRunItem;
+import com.aalto.paycraft.entity.VirtualAccount;
+import com.aalto.paycraft.entity.WebhookData;
+import com.aalto.paycraft.repository.PayoutRepository;
+import com.aalto.paycraft.repository.PayrollRunChunkRepository;
+import com.aalto.paycraft.repository.PayrollRunItemRepository;
+import com.aalto.paycraft.repository.PayrollRunRepository;
+import com.aalto.paycraft.repository.VirtualAccountRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.aalto.paycraft.dto.enums.PayrollRunItemStatus.*;
+
+/**
+ * Records payroll runs. Starting a run copies each employee's salary and bank details into
+ * payroll_run_items with one JDBC batch and splits them into chunks of chunk-size items; the bulk
+ * payout requests are then built a chunk at a time from those rows, and transfer webhooks update
+ * them a batch at a time. An item that fails after it was sent has its salary credited back on its own.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PayrollRunService {
+    private final PayrollRunRepository runRepository;
+    private final PayrollRunItemRepository itemRepository;
+    private final PayrollRunChunkRepository chunkRepository;
+    private final BankDirectory bankDirectory;
+    private final JdbcTemplate jdbcTemplate;
+    private final PayoutRepository payoutRepository;
+    private final VirtualAccountRepository virtualAccountRepository;
+    private final LedgerService ledgerService;
+
+    @Value("${payout.bulk.chunk-size:500}")
+    private int chunkSize;
+
+    private static final List<PayrollRunItemStatus> OPEN = List.of(PENDING, PROCESSING);
+
+    private static final String SELECT_MEMBERS =
+            "SELECT e.employee_id, e.first_name, e.last_name, e.email_address, e.bank_name, e.account_number, e.salary_amount " +
+            "FROM payroll_employee pe JOIN employee e ON e.employee_id = pe.employee_id WHERE pe.payroll_id = ?";
+
+    private static final String INSERT_ITEM =
+            "INSERT INTO payroll_run_items (run_id, chunk_no, employee_id, full_name, email_address, bank_name, bank_code, " +
+            "account_number, amount, currency, reference, status, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Starts a run of the payroll and freezes its members into run items.
+     * Throws if an employee's bank cannot be resolved, so no run is left with missing items.
+     */
+    @Transactional
+    public PayrollRun startRun(Payroll payroll) {
+        PayrollRun run = runRepository.saveAndFlush(PayrollRun.builder()
+                .payrollId(payroll.getPayrollId())
+                .companyId(payroll.getCompany().getCompanyId())
+                .payrollName(payroll.getPayrollName())
+                .status(PayrollRunStatus.QUEUED)
+                .employeeCount(0)
+                .totalAmount(BigDecimal.ZERO)
+                .startedAt(LocalDateTime.now())
+                .build());
+
+        String runId = run.getRunId().toString();
+        Timestamp now = Timestamp.valueOf(run.getStartedAt());
+        List<Object[]> items = jdbcTemplate.query(SELECT_MEMBERS, (rs, rowNum) -> {
+            String bankName = rs.getString("bank_name");
+            return new Object[]{
+                    runId,
+                    rowNum / chunkSize,
+                    rs.getString("employee_id"),
+                    rs.getString("first_name") + " " + rs.getString("last_name"),
+                    rs.getString("email_address"),
+                    bankName,
+                    bankDirectory.getBankCode(bankName),
+                    rs.getString("account_number"),
+                    rs.getBigDecimal("salary_amount"),
+                    "NGN",
+                    UUID.randomUUID().toString(),
+                    PENDING.name(),
+                    now};
+        }, payroll.getPayrollId().toString());
+
+        jdbcTemplate.batchUpdate(INSERT_ITEM, items);
+
+        BigDecimal total = BigDecimal.ZERO;
+        List<PayrollRunChunk> chunks = new ArrayList<>();
+        for (Object[] item : items) {
+            int chunkNo = (int) item[1];
+            BigDecimal amount = (BigDecimal) item[8];
+            if (chunkNo == chunks.size())
+                chunks.add(PayrollRunChunk.builder()
+                        .runId(run.getRunId())
+                        .chunkNo(chunkNo)
+                        .itemCount(0)
+                        .amount(BigDecimal.ZERO)
+                        .status(PayrollRunChunkStatus.PENDING)
+                        .batchReference(UUID.randomUUID().toString())
+                        .build());
+            PayrollRunChunk chunk = chunks.get(chunkNo);
+            chunk.setItemCount(chunk.getItemCount() + 1);
+            chunk.setAmount(chunk.getAmount().add(amount));
+            total = total.add(amount);
+        }
+        chunkRepository.saveAll(chunks);
+
+        run.setEmployeeCount(items.size());
+        run.setTotalAmount(total);
+        runRepository.save(run);
+
+        log.info("Started run {} of payroll {} with {} employees in {} chunks",
+                run.getRunId(), payroll.getPayrollName(), items.size(), chunks.size());
+        return run;
+    }
+
+    public List<PayrollRunChunk> chunksOf(UUID runId) {
+        return chunkRepository.findAllByRunIdOrderByChunkNo(runId);
+    }
+
+    // The transfers to send for one chunk of a run, from its frozen items
+    public List<PayoutData> payoutDataFor(UUID runId, int chunkNo) {
+        List<PayoutData> payoutDataList = new ArrayList<>();
+        for (PayrollRunItem item : itemRepository.findAllByRunIdAndChunkNoOrderById(runId, chunkNo)) {
+            payoutDataList.add(PayoutData.builder()
+                    .reference(item.getReference())
+                    .fullName(item.getFullName())
+                    .email(item.getEmailAddress())
+                    .accountNumber(item.getAccountNumber())
+                    .amount(item.getAmount())
+                    .bankCode(item.getBankCode())
+                    .currency(item.getCurrency())
+                    .build());
+        }
+        return payoutDataList;
+    }
+
+    // Chunks of runs started before batch references were fixed up front get theirs just before they are sent
+    public void ensureBatchReference(PayrollRunChunk chunk) {
+        if (chunk.getBatchReference() == null) {
+            chunk.setBatchReference(UUID.randomUUID().toString());
+            chunkRepository.save(chunk);
+        }
+    }
+
+    public void chunkAccepted(PayrollRunChunk chunk, String batchReference, BigDecimal chargeableAmount) {
+        updateChunk(chunk, PayrollRunChunkStatus.SUBMITTED, null);
+        if (batchReference != null)
+            chunk.setBatchReference(batchReference);
+        chunk.setChargeableAmount(chargeableAmount);
+        chunkRepository.save(chunk);
+        itemRepository.transitionChunk(chunk.getRunId(), chunk.getChunkNo(), PENDING, PROCESSING, LocalDateTime.now());
+    }
+
+    // The items may or may not have been sent, so they stay open until their webhooks arrive
+    public void chunkUnconfirmed(PayrollRunChunk chunk, String reason) {
+        updateChunk(chunk, PayrollRunChunkStatus.UNCONFIRMED, reason);
+        chunkRepository.save(chunk);
+        itemRepository.transitionChunk(chunk.getRunId(), chunk.getChunkNo(), PENDING, PROCESSING, LocalDateTime.now());
+    }
+
+    public void chunkFailed(PayrollRunChunk chunk, String reason) {
+        updateChunk(chunk, PayrollRunChunkStatus.FAILED, reason);
+        chunkRepository.save(chunk);
+        itemRepository.transitionChunk(chunk.getRunId(), chunk.getChunkNo(), PENDING, FAILED, LocalDateTime.now());
+    }
+
+    // An unconfirmed chunk that KoraPay says it never received: its items fail along with it
+    @Transactional
+    public void chunkNotReceived(PayrollRunChunk chunk) {
+        LocalDateTime now = LocalDateTime.now();
+        updateChunk(chunk, PayrollRunChunkStatus.FAILED, "Not received by provider");
+        chunkRepository.save(chunk);
+        itemRepository.transitionChunk(chunk.getRunId(), chunk.getChunkNo(), PENDING, FAILED, now);
+        itemRepository.transitionChunk(chunk.getRunId(), chunk.getChunkNo(), PROCESSING, FAILED, now);
+        runRepository.recountItems(List.of(chunk.getRunId().toString()), now);
+    }
+
+    private static void updateChunk(PayrollRunChunk chunk, PayrollRunChunkStatus status, String reason) {
+        chunk.setStatus(status);
+        chunk.setFailureReason(reason != null && reason.length() > 255 ? reason.substring(0, 255) : reason);
+        chunk.setUpdatedAt(LocalDateTime.now());
+    }
+
+    /**
+     * Settles the run once all its chunks have been through submission. Failed chunks' items are
+     * already FAILED, so the recount closes the run straight away if nothing else is outstanding.
+     */
+    public void finishSubmission(UUID runId) {
+        runRepository.updateStatus(runId, PayrollRunStatus.SUBMITTED, null, null);
+        runRepository.recountItems(List.of(runId.toString()), LocalDateTime.now());
+    }
+
+    // True once no item of the run is still pending or processing
+    public boolean isFinished(UUID runId) {
+        return runRepository.findById(runId)
+                .map(run -> run.getStatus() != PayrollRunStatus.QUEUED && run.getStatus() != PayrollRunStatus.SUBMITTED)
+                .orElse(true);
+    }
+
+    public void markFailed(UUID runId, String reason) {
+        LocalDateTime now = LocalDateTime.now();
+        itemRepository.transitionRun(runId, PENDING, FAILED, now);
+        runRepository.updateStatus(runId, PayrollRunStatus.FAILED, reason, now);
+    }
+
+    /**
+     * Applies a batch of transfer webhooks to run items: one update per outcome, then one recount of the affected runs.
+     * Failed items are credited back to the employer in the same transaction that fails them.
+     * Webhooks that are not for run items match nothing.
+     */
+    @Transactional
+    public void applyWebhooks(List<WebhookData> events) {
+        List<String> succeeded = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (WebhookData webhookData : events) {
+            if ("transfer.success".equals(webhookData.getEvent()))
+                succeeded.add(webhookData.getReference());
+            else if ("transfer.failed".equals(webhookData.getEvent()))
+                failed.add(webhookData.getReference());
+        }
+        if (succeeded.isEmpty() && failed.isEmpty())
+            return;
+
+        LocalDateTime now = LocalDateTime.now();
+        int updated = 0;
+        if (!succeeded.isEmpty())
+            updated += itemRepository.transitionByReferences(succeeded, OPEN, SUCCEEDED, now);
+        if (!failed.isEmpty())
+            updated += failItems(failed, now);
+        if (updated == 0)
+            return;
+
+        List<String> references = new ArrayList<>(succeeded);
+        references.addAll(failed);
+        List<String> runIds = itemRepository.findRunIdsByReferences(references).stream().map(UUID::toString).toList();
+        runRepository.recountItems(runIds, now);
+        log.info("Applied {} item webhooks to {} payroll runs", updated, runIds.size());
+    }
+
+    // Only items that were still open are failed and refunded, so a repeated webhook credits nothing
+    private int failItems(List<String> references, LocalDateTime now) {
+        List<PayrollRunItem> items = itemRepository.findAllForUpdate(references, OPEN);
+        if (items.isEmpty())
+            return 0;
+
+        int updated = itemRepository.transitionByReferences(
+                items.stream().map(PayrollRunItem::getReference).toList(), OPEN, FAILED, now);
+
+        Map<UUID, VirtualAccount> accounts = new HashMap<>();
+        for (PayrollRunItem item : items) {
+            VirtualAccount account = accounts.computeIfAbsent(item.getRunId(), this::accountOfRun);
+            // The item reference makes the reversal idempotent: the ledger rejects a second posting of it
+            ledgerService.credit(account, Payment.builder()
+                    .referenceNumber(item.getReference() + "-reversal")
+                    .amount(item.getAmount())
+                    .transactionDateTime(now)
+                    .description("Salary Reversal")
+                    .currency(item.getCurrency())
+                    .employeeName(item.getFullName())
+                    .build());
+        }
+        log.info("Credited back {} failed payroll items", items.size());
+        return updated;
+    }
+
+    private VirtualAccount accountOfRun(UUID runId) {
+        UUID employerId = payoutRepository.findByPayrollRunId(runId)
+                .map(Payout::getEmployerId)
+                .orElseThrow(() -> new RuntimeException("No payout for payroll run " + runId));
+        return virtualAccountRepository.findByEmployer_EmployerId(employerId)
+                .orElseThrow(() -> new RuntimeException("Virtual account not found"));
+    }
+}
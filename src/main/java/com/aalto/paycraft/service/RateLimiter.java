@@ -0,0 +1,97 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.config.RateLimitProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token buckets, one per (rule, key).
+ * Each bucket is a single AtomicLong holding the time at which it will be full again (the GCRA form
+ * of a token bucket), updated with compare-and-set. A bucket whose time has passed is full and carries
+ * no state, so idle buckets can be dropped at any point; that is how the key map is kept bounded.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RateLimiter {
+    private final RateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("rate.limit.keys", buckets, Map::size)
+                .description("Rate limit buckets held in memory")
+                .register(meterRegistry);
+        properties.rules().forEach((name, rule) ->
+                log.info("Rate limit {}: {} burst, {} per minute by {}", name, rule.capacity(), rule.permitsPerMinute(), rule.key()));
+    }
+
+    /**
+     * Takes one permit for the key under the named rule.
+     * @return 0 if the request may proceed, otherwise the nanoseconds until it would be allowed
+     */
+    public long tryAcquire(String ruleName, String key) {
+        RateLimitProperties.Rule rule = properties.rules().get(ruleName);
+        if (!properties.enabled() || rule == null || key == null)
+            return 0;
+
+        long interval = TimeUnit.MINUTES.toNanos(1) / rule.permitsPerMinute();
+        long burst = interval * rule.capacity();
+        AtomicLong bucket = bucketFor(ruleName + '|' + key);
+
+        while (true) {
+            long now = System.nanoTime();
+            long fullAt = bucket.get();
+            // nanoTime values are only comparable by difference
+            long next = (fullAt - now > 0 ? fullAt : now) + interval;
+            long wait = next - now - burst;
+            if (wait > 0) {
+                meterRegistry.counter("rate.limit.throttled", "rule", ruleName).increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, next))
+                return 0;
+        }
+    }
+
+    private AtomicLong bucketFor(String bucketKey) {
+        AtomicLong bucket = buckets.get(bucketKey);
+        if (bucket != null)
+            return bucket;
+
+        if (buckets.size() >= properties.maxKeys()) {
+            long now = System.nanoTime();
+            long last = lastSweep.get();
+            // At most one sweep a second, however many new keys arrive
+            if (now - last > SWEEP_INTERVAL_NANOS && lastSweep.compareAndSet(last, now))
+                evictFull();
+            if (buckets.size() >= properties.maxKeys()) {
+                // Still full of active keys: new keys share one bucket per rule until space frees up
+                meterRegistry.counter("rate.limit.overflow").increment();
+                bucketKey = bucketKey.substring(0, bucketKey.indexOf('|')) + "|overflow";
+            }
+        }
+        return buckets.computeIfAbsent(bucketKey, k -> new AtomicLong(System.nanoTime()));
+    }
+
+    @Scheduled(fixedDelayString = "${rate-limit.sweep-ms:60000}")
+    public void evictFull() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+}
@@ -0,0 +1,131 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.repository.EmployerRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tracks each employer's token epoch, the generation number carried in the
+ * {@link JWTService#CLAIM_EPOCH} claim of their tokens.
+ * A token is only accepted while its epoch matches the employer's, so revoking every token an
+ * employer holds is a single increment of Employer.tokenEpoch.
+ * Epochs are cached per employer and reloaded periodically, so revocations made on other
+ * instances take effect within one refresh interval. Employers not seen for idle-ms are dropped
+ * from the cache, which is also capped at max-size entries.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenEpochService {
+    private final EmployerRepository employerRepository;
+
+    @Value("${auth.token-epoch.max-size:100000}")
+    private int maxSize;
+
+    @Value("${auth.token-epoch.idle-ms:600000}")
+    private long idleMillis;
+
+    // Never matches a real epoch, so tokens for unknown employers are rejected
+    private static final long UNKNOWN_EMPLOYER = -1L;
+
+    private record CachedEpoch(long epoch, long readAt) {
+        // Epochs only go up, so of two racing loads the higher one is current
+        static CachedEpoch newer(CachedEpoch a, CachedEpoch b) {
+            return new CachedEpoch(Math.max(a.epoch, b.epoch), Math.max(a.readAt, b.readAt));
+        }
+    }
+
+    // Access-ordered LRU of the employers whose tokens are being checked
+    private Map<UUID, CachedEpoch> epochs;
+
+    @PostConstruct
+    void initCache() {
+        epochs = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, CachedEpoch> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    public long currentEpoch(UUID employerId) {
+        long now = System.currentTimeMillis();
+        CachedEpoch cached = epochs.get(employerId);
+        // Loaded outside the map's lock so one slow query does not hold up every request
+        long epoch = cached != null ? cached.epoch() : load(employerId);
+        return epochs.merge(employerId, new CachedEpoch(epoch, now), CachedEpoch::newer).epoch();
+    }
+
+    public boolean isCurrent(UUID employerId, Number tokenEpoch) {
+        return employerId != null && tokenEpoch != null && tokenEpoch.longValue() == currentEpoch(employerId);
+    }
+
+    /**
+     * Invalidates every access and refresh token issued to the employer so far.
+     * Used on logout, token refresh, password change and account deletion.
+     */
+    public void revokeAll(UUID employerId) {
+        employerRepository.incrementTokenEpoch(employerId);
+
+        // Inside a transaction the new epoch only becomes visible once it commits
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reload(employerId);
+                }
+            });
+        } else {
+            reload(employerId);
+        }
+        log.info("Revoked all tokens for employer {}", employerId);
+    }
+
+    private long load(UUID employerId) {
+        return employerRepository.findTokenEpochByEmployerId(employerId).orElse(UNKNOWN_EMPLOYER);
+    }
+
+    private void reload(UUID employerId) {
+        epochs.merge(employerId, new CachedEpoch(load(employerId), System.currentTimeMillis()), CachedEpoch::newer);
+    }
+
+    // Drops idle employers and picks up revocations made by other instances
+    @Scheduled(fixedDelayString = "${auth.token-epoch.refresh-ms:30000}")
+    public void refresh() {
+        long idleBefore = System.currentTimeMillis() - idleMillis;
+        List<UUID> employerIds;
+        synchronized (epochs) {
+            epochs.values().removeIf(cached -> cached.readAt() < idleBefore);
+            employerIds = List.copyOf(epochs.keySet());
+        }
+        if (employerIds.isEmpty()) return;
+
+        Map<UUID, Long> latest = new HashMap<>(employerIds.size());
+        for (Object[] row : employerRepository.findTokenEpochsByEmployerIds(employerIds))
+            latest.put((UUID) row[0], (Long) row[1]);
+
+        for (UUID id : employerIds) {
+            Long epoch = latest.get(id);
+            if (epoch == null) {
+                // Employer is gone; the next check reloads it as unknown
+                epochs.remove(id);
+                continue;
+            }
+            // computeIfPresent, so an entry evicted meanwhile is not put back
+            epochs.computeIfPresent(id, (key, cached) -> new CachedEpoch(Math.max(cached.epoch(), epoch), cached.readAt()));
+        }
+    }
+}
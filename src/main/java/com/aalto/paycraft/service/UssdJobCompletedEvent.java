@@ -0,0 +1,11 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.dto.enums.UssdJobStatus;
+
+/**
+ * Published when a job started from the USSD menu finishes, successfully or not.
+ * Listeners tell the caller about the outcome, since the USSD session has long closed.
+ */
+public record UssdJobCompletedEvent(String jobId, String description, String phoneNumber,
+                                    UssdJobStatus status, String message) {
+}
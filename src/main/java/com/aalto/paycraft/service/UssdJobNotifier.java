@@ -0,0 +1,25 @@
+package com.aalto.paycraft.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Default listener for finished USSD jobs: records the outcome and logs it for the caller's phone number.
+ * The actions themselves already send their confirmation emails; an SMS gateway would hook in here.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UssdJobNotifier {
+    private final MeterRegistry meterRegistry;
+
+    @EventListener
+    public void onJobCompleted(UssdJobCompletedEvent event) {
+        meterRegistry.counter("ussd.jobs.completed", "status", event.status().name()).increment();
+        log.info("Notify {}: {} ({}) {} - {}", event.phoneNumber(), event.description(), event.jobId(),
+                event.status(), event.message());
+    }
+}
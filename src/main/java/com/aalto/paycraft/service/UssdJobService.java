@@ -0,0 +1,137 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.config.TenantContext;
+import com.aalto.paycraft.config.TenantContextHolder;
+import com.aalto.paycraft.dto.DefaultApiResponse;
+import com.aalto.paycraft.dto.enums.UssdJobStatus;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import static com.aalto.paycraft.constants.PayCraftConstant.REQUEST_SUCCESS;
+
+/**
+ * Runs slow USSD actions (card funding, payroll runs) off the gateway's request thread.
+ * The menu answers with a short job reference straight away; the job's status can be read back
+ * from the menu, and a {@link UssdJobCompletedEvent} is published when it finishes.
+ * Job records are kept in memory for the most recent max-jobs jobs.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UssdJobService {
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Qualifier("ussdJobExecutor")
+    private final Executor ussdJobExecutor;
+
+    @Value("${ussd.jobs.max-jobs:10000}")
+    private int maxJobs;
+
+    // Short enough to read out on a phone screen; no 0/O or 1/I
+    private static final char[] REFERENCE_ALPHABET = "ABCDEFGHJKLMNPQRSTUVWXYZ23456789".toCharArray();
+    private static final int REFERENCE_LENGTH = 6;
+    private final SecureRandom random = new SecureRandom();
+
+    @Getter
+    public static class UssdJob {
+        private final String jobId;
+        private final String description;
+        private final String phoneNumber;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private volatile UssdJobStatus status = UssdJobStatus.QUEUED;
+        private volatile String message;
+        private volatile LocalDateTime finishedAt;
+
+        UssdJob(String jobId, String description, String phoneNumber) {
+            this.jobId = jobId;
+            this.description = description;
+            this.phoneNumber = phoneNumber;
+        }
+    }
+
+    // Access-ordered LRUs: jobs by reference, and each phone number's latest job
+    private Map<String, UssdJob> jobs;
+    private Map<String, String> latestJobByPhone;
+
+    @PostConstruct
+    void init() {
+        jobs = boundedMap();
+        latestJobByPhone = boundedMap();
+    }
+
+    private <V> Map<String, V> boundedMap() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxJobs;
+            }
+        });
+    }
+
+    /**
+     * Queues the action to run as the given tenant.
+     * @return the job, or empty if the job queue is full
+     */
+    public Optional<UssdJob> submit(String description, String phoneNumber, TenantContext tenant,
+                                    Supplier<DefaultApiResponse<?>> action) {
+        UssdJob job = new UssdJob(newReference(), description, phoneNumber);
+        jobs.put(job.getJobId(), job);
+
+        try {
+            ussdJobExecutor.execute(() -> run(job, tenant, action));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            log.warn("USSD job queue full, rejected {} for {}", description, phoneNumber);
+            return Optional.empty();
+        }
+        latestJobByPhone.put(phoneNumber, job.getJobId());
+        log.info("Queued USSD job {} ({}) for {}", job.getJobId(), description, phoneNumber);
+        return Optional.of(job);
+    }
+
+    public Optional<UssdJob> findLatest(String phoneNumber) {
+        return Optional.ofNullable(latestJobByPhone.get(phoneNumber)).map(jobs::get);
+    }
+
+    private void run(UssdJob job, TenantContext tenant, Supplier<DefaultApiResponse<?>> action) {
+        job.status = UssdJobStatus.RUNNING;
+        try {
+            DefaultApiResponse<?> response = TenantContextHolder.callAs(tenant, action);
+            job.message = response.getStatusMessage();
+            job.status = REQUEST_SUCCESS.equals(response.getStatusCode()) ? UssdJobStatus.SUCCEEDED : UssdJobStatus.FAILED;
+        } catch (Exception e) {
+            log.error("USSD job {} failed: {}", job.getJobId(), e.getMessage());
+            job.message = e.getMessage();
+            job.status = UssdJobStatus.FAILED;
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+        }
+
+        log.info("USSD job {} finished: {}", job.getJobId(), job.getStatus());
+        eventPublisher.publishEvent(new UssdJobCompletedEvent(
+                job.getJobId(), job.getDescription(), job.getPhoneNumber(), job.getStatus(), job.getMessage()));
+    }
+
+    private String newReference() {
+        char[] reference = new char[REFERENCE_LENGTH];
+        for (int i = 0; i < REFERENCE_LENGTH; i++)
+            reference[i] = REFERENCE_ALPHABET[random.nextInt(REFERENCE_ALPHABET.length)];
+        return new String(reference);
+    }
+}
@@ -0,0 +1,94 @@
+package com.aalto.paycraft.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-session state of the USSD menu, keyed by the gateway's sessionId.
+ * Sessions are dropped when the menu ends, after ttl-ms without input, or least recently used
+ * first once max-size sessions are open.
+ */
+@Slf4j
+@Service
+public class UssdSessionStore {
+
+    @Value("${ussd.session.max-size:50000}")
+    private int maxSize;
+
+    @Value("${ussd.session.ttl-ms:180000}")
+    private long ttlMillis;
+
+    /**
+     * What the phone number resolves to, looked up on the first step of a session and reused by the rest.
+     * Ids and display fields only; balances are always read fresh.
+     */
+    public record UssdProfile(UUID employerId, UUID accountId, String accountNumber,
+                              String bankName, String bankCode, UUID companyId) {
+    }
+
+    // State carried between the steps of one session
+    @Getter @Setter
+    public static class UssdSession {
+        private final String phoneNumber;
+        private volatile UssdProfile profile;
+        private volatile BigDecimal amount;
+        private volatile long lastSeenAt = System.currentTimeMillis();
+
+        UssdSession(String phoneNumber) {
+            this.phoneNumber = phoneNumber;
+        }
+    }
+
+    // Access-ordered so the least recently active sessions are evicted first
+    private Map<String, UssdSession> sessions;
+
+    @PostConstruct
+    void init() {
+        sessions = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UssdSession> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * Returns the session for this step, starting a new one if there is none, it has expired,
+     * or it belongs to a different phone number.
+     */
+    public UssdSession session(String sessionId, String phoneNumber) {
+        long now = System.currentTimeMillis();
+        // Gateways always send a sessionId; the phone number keeps state apart if one does not
+        String key = sessionId != null ? sessionId : phoneNumber;
+
+        return sessions.compute(key, (k, session) -> {
+            if (session == null || now - session.getLastSeenAt() > ttlMillis || !session.getPhoneNumber().equals(phoneNumber))
+                session = new UssdSession(phoneNumber);
+            session.setLastSeenAt(now);
+            return session;
+        });
+    }
+
+    public void end(String sessionId, String phoneNumber) {
+        sessions.remove(sessionId != null ? sessionId : phoneNumber);
+    }
+
+    @Scheduled(fixedDelayString = "${ussd.session.sweep-ms:60000}")
+    public void evictExpired() {
+        long expiredBefore = System.currentTimeMillis() - ttlMillis;
+        synchronized (sessions) {
+            sessions.values().removeIf(session -> session.getLastSeenAt() < expiredBefore);
+        }
+    }
+}
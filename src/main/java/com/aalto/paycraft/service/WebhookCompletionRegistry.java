@@ -0,0 +1,60 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.entity.WebhookData;
+import com.aalto.paycraft.repository.WebhookDataRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks payment references that a caller is waiting on.
+ * KoraPayWebhook completes the waiter as soon as the matching webhook is stored,
+ * so verification no longer sleeps or polls the webhook table.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WebhookCompletionRegistry {
+    private final WebhookDataRepository webhookDataRepository;
+
+    @Value("${webhook-wait-timeout-ms:50000}")
+    private long waitTimeoutMillis;
+
+    private final Map<String, CompletableFuture<WebhookData>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a future that completes with the webhook for the reference.
+     * The waiter is registered before the single DB lookup, so a webhook that lands in between is not missed.
+     * Completes exceptionally with a TimeoutException if nothing arrives within the configured wait.
+     */
+    public CompletableFuture<WebhookData> awaitWebhook(String reference) {
+        CompletableFuture<WebhookData> waiter = pending.computeIfAbsent(reference, ref -> {
+            CompletableFuture<WebhookData> future = new CompletableFuture<>();
+            future.orTimeout(waitTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .whenComplete((data, ex) -> pending.remove(ref, future));
+            return future;
+        });
+
+        // Fallback for webhooks that arrived before anyone was waiting
+        Optional<WebhookData> stored = webhookDataRepository.findFirstByReferenceOrderByIdDesc(reference);
+        stored.ifPresent(waiter::complete);
+
+        return waiter;
+    }
+
+    // Called once a verified webhook has been persisted
+    public void complete(WebhookData webhookData) {
+        CompletableFuture<WebhookData> waiter = pending.remove(webhookData.getReference());
+        if (waiter != null) {
+            log.info("Completing waiter for reference: {}", webhookData.getReference());
+            waiter.complete(webhookData);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.entity.WebhookData;
+import com.aalto.paycraft.entity.WebhookInbox;
+import com.aalto.paycraft.repository.WebhookInboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.aalto.paycraft.dto.enums.WebhookInboxStatus.*;
+
+/**
+ * Drains the webhook inbox in batches on the webhook worker pool.
+ * Each batch is written to webhook_data with one JDBC batch insert and its payout and payroll run effects are
+ * applied in the same transaction, so an event is only ever recorded together with its effects. If the batch
+ * fails, its events are retried one transaction each; an event that still fails leaves its inbox rows claimed,
+ * to be retried once the claim expires.
+ * Redelivered events are dropped, first by a bounded filter of recently stored
+ * (reference, event) keys and then by the unique index on webhook_data.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WebhookInboxProcessor {
+    private final WebhookInboxRepository webhookInboxRepository;
+    private final KoraPayWebhook koraPayWebhook;
+    private final PayoutProcessor payoutProcessor;
+    private final WebhookCompletionRegistry webhookCompletionRegistry;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final LeaseService leaseService;
+    private final PayrollRunService payrollRunService;
+
+    @Qualifier("taskExecutor")
+    private final Executor webhookExecutor;
+
+    @Value("${webhook-inbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${webhook-inbox.batches-per-poll:4}")
+    private int batchesPerPoll;
+
+    @Value("${webhook-inbox.claim-timeout-ms:120000}")
+    private long claimTimeoutMillis;
+
+    @Value("${webhook-inbox.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${webhook-inbox.retention-days:7}")
+    private int retentionDays;
+
+    @Value("${webhook-inbox.recent-keys:10000}")
+    private int recentKeysCapacity;
+
+    @Value("${cluster.lease.ttl-ms:60000}")
+    private long leaseTtlMillis;
+
+    /*
+     * An event already in the table is skipped by the unique key and reports 0 rows, whatever the connection's
+     * found-rows setting. Needs per-row counts, so rewriteBatchedStatements must stay off on the JDBC URL.
+     */
+    private static final String INSERT_WEBHOOK_DATA =
+            "INSERT IGNORE INTO webhook_data (event, reference, currency, amount, fee, status) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final AtomicLong depth = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private Counter processed;
+    private Counter failed;
+    private Counter duplicates;
+
+    // Access-ordered so the least recently seen keys are evicted first
+    private Map<String, Boolean> recentKeys;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("webhook.inbox.depth", depth, AtomicLong::get)
+                .description("Webhooks waiting in the inbox")
+                .register(meterRegistry);
+        Gauge.builder("webhook.inbox.lag.seconds", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest unprocessed webhook")
+                .register(meterRegistry);
+        processed = meterRegistry.counter("webhook.inbox.processed");
+        failed = meterRegistry.counter("webhook.inbox.failed");
+        duplicates = meterRegistry.counter("webhook.inbox.duplicates");
+
+        recentKeys = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > recentKeysCapacity;
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${webhook-inbox.poll-ms:1000}")
+    public void drain() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime claimExpiredBefore = now.minus(Duration.ofMillis(claimTimeoutMillis));
+        refreshMetrics(now);
+
+        List<Long> ids = webhookInboxRepository.findClaimableIds(
+                PENDING, PROCESSING, claimExpiredBefore, PageRequest.of(0, batchSize * batchesPerPoll));
+
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            String claimToken = UUID.randomUUID().toString();
+
+            if (webhookInboxRepository.claim(batch, PENDING, PROCESSING, claimToken, now, claimExpiredBefore) == 0)
+                continue;
+
+            try {
+                webhookExecutor.execute(() -> processBatch(claimToken));
+            } catch (RejectedExecutionException e) {
+                // Claimed rows are picked up again once the claim expires
+                log.warn("Webhook workers busy, batch {} deferred", claimToken);
+                return;
+            }
+        }
+    }
+
+    void processBatch(String claimToken) {
+        List<WebhookInbox> rows = webhookInboxRepository.findAllByClaimToken(claimToken);
+        List<WebhookData> events = new ArrayList<>(rows.size());
+        // Inbox rows by event key; redeliveries in the same batch share their key and its outcome
+        Map<String, List<Long>> rowsByKey = new LinkedHashMap<>();
+        List<Long> doneIds = new ArrayList<>(rows.size());
+        int suppressed = 0;
+
+        for (WebhookInbox row : rows) {
+            try {
+                WebhookData webhookData = koraPayWebhook.toWebhookData(row.getPayload());
+
+                String key = keyOf(webhookData);
+                if (recentKeys.containsKey(key)) {
+                    doneIds.add(row.getId());
+                    suppressed++;
+                    continue;
+                }
+                List<Long> ids = rowsByKey.computeIfAbsent(key, k -> new ArrayList<>());
+                if (ids.isEmpty())
+                    events.add(webhookData);
+                else
+                    suppressed++;
+                ids.add(row.getId());
+            } catch (Exception e) {
+                // A payload that cannot be parsed will not get better with retries
+                log.error("Unreadable webhook in inbox {}: {}", row.getId(), e.getMessage());
+                markFailed(row.getId(), e.getMessage());
+            }
+        }
+
+        List<WebhookData> settled = new ArrayList<>(events.size());
+        List<WebhookData> stored = new ArrayList<>(events.size());
+        String error = null;
+        try {
+            stored.addAll(transactionTemplate.execute(status -> storeAndApply(events)));
+            settled.addAll(events);
+        } catch (Exception e) {
+            log.warn("Webhook batch {} failed, retrying its events one at a time: {}", claimToken, e.getMessage());
+            for (WebhookData webhookData : events) {
+                try {
+                    stored.addAll(transactionTemplate.execute(status -> storeAndApply(List.of(webhookData))));
+                    settled.add(webhookData);
+                } catch (Exception eventError) {
+                    error = eventError.getMessage();
+                    log.error("Error applying webhook {}: {}", webhookData.getReference(), error);
+                }
+            }
+        }
+
+        // Keys are only remembered, and waiting requests completed, once the events are committed
+        for (WebhookData webhookData : settled) {
+            String key = keyOf(webhookData);
+            recentKeys.put(key, Boolean.TRUE);
+            doneIds.addAll(rowsByKey.remove(key));
+        }
+        for (WebhookData webhookData : stored)
+            webhookCompletionRegistry.complete(webhookData);
+
+        suppressed += settled.size() - stored.size();
+        if (suppressed > 0) {
+            log.info("Suppressed {} duplicate webhooks in batch {}", suppressed, claimToken);
+            duplicates.increment(suppressed);
+        }
+
+        if (!doneIds.isEmpty())
+            webhookInboxRepository.complete(doneIds, DONE, LocalDateTime.now(), null);
+        processed.increment(doneIds.size());
+
+        // Rows of events that failed stay claimed and are retried after the claim expires, up to maxAttempts
+        if (!rowsByKey.isEmpty()) {
+            Map<Long, WebhookInbox> rowsById = new HashMap<>();
+            rows.forEach(row -> rowsById.put(row.getId(), row));
+            for (List<Long> ids : rowsByKey.values()) {
+                for (Long id : ids) {
+                    if (rowsById.get(id).getAttempts() >= maxAttempts)
+                        markFailed(id, error);
+                }
+            }
+        }
+    }
+
+    // Records the events that are new and applies their effects; runs inside the caller's transaction
+    private List<WebhookData> storeAndApply(List<WebhookData> events) {
+        List<WebhookData> stored = insertWebhookData(events);
+        for (WebhookData webhookData : stored)
+            payoutProcessor.onWebhook(webhookData);
+        // Payroll run items are updated for the whole batch at once
+        payrollRunService.applyWebhooks(stored);
+        return stored;
+    }
+
+    // Returns the events that were newly stored; events already in webhook_data are left out
+    private List<WebhookData> insertWebhookData(List<WebhookData> events) {
+        if (events.isEmpty()) return events;
+
+        int[][] counts = jdbcTemplate.batchUpdate(INSERT_WEBHOOK_DATA, events, events.size(), (ps, webhookData) -> {
+            ps.setString(1, webhookData.getEvent());
+            ps.setString(2, webhookData.getReference());
+            ps.setString(3, webhookData.getCurrency());
+            ps.setBigDecimal(4, webhookData.getAmount());
+            ps.setBigDecimal(5, webhookData.getFee());
+            ps.setString(6, webhookData.getStatus());
+        });
+
+        List<WebhookData> stored = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            if (counts[0][i] == 1)
+                stored.add(events.get(i));
+        }
+        return stored;
+    }
+
+    private static String keyOf(WebhookData webhookData) {
+        return webhookData.getReference() + '|' + webhookData.getEvent();
+    }
+
+    private void markFailed(Long id, String error) {
+        String reason = error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
+        webhookInboxRepository.complete(List.of(id), FAILED, LocalDateTime.now(), reason);
+        failed.increment();
+    }
+
+    private void refreshMetrics(LocalDateTime now) {
+        depth.set(webhookInboxRepository.countByStatus(PENDING));
+        lagSeconds.set(webhookInboxRepository.findOldestReceivedAtByStatus(PENDING)
+                .map(oldest -> Duration.between(oldest, now).toSeconds())
+                .orElse(0L));
+    }
+
+    // Processed rows are only kept for troubleshooting
+    @Scheduled(cron = "${webhook-inbox.purge-cron:0 0 3 * * *}")
+    public void purgeProcessed() {
+        leaseService.runExclusively("webhook-inbox-purge", Duration.ofMillis(leaseTtlMillis), token -> {
+            int deleted = webhookInboxRepository.deleteByStatusProcessedBefore(DONE, LocalDateTime.now().minusDays(retentionDays));
+            log.info("Purged {} processed webhooks from the inbox", deleted);
+        });
+    }
+}
@@ -1,34 +1,32 @@
 package com.aalto.paycraft.service.impl;
 
+import com.aalto.paycraft.config.TenantContextHolder;
 import com.aalto.paycraft.dto.AuthorizationResponseDto;
 import com.aalto.paycraft.dto.DefaultApiResponse;
 import com.aalto.paycraft.dto.LoginRequestDto;
 import com.aalto.paycraft.dto.RefreshTokenRequestDto;
 import com.aalto.paycraft.entity.AuthToken;
 import com.aalto.paycraft.entity.Employer;
+import com.aalto.paycraft.exception.TooManyRequestsException;
 import com.aalto.paycraft.repository.AuthTokenRepository;
 import com.aalto.paycraft.repository.EmployerRepository;
 import com.aalto.paycraft.service.IAuthenticationService;
 import com.aalto.paycraft.service.IEmailService;
 import com.aalto.paycraft.service.JWTService;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.ExpiredJwtException;
+import com.aalto.paycraft.service.RateLimiter;
+import com.aalto.paycraft.service.TokenEpochService;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.context.Context;
 
 import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.function.Function;
+import java.util.concurrent.TimeUnit;
 
 import static com.aalto.paycraft.constants.PayCraftConstant.*;
 
@@ -36,9 +34,10 @@ import static com.aalto.paycraft.constants.PayCraftConstant.*;
 public class AuthenticationServiceImpl implements IAuthenticationService {
     private final EmployerRepository employerRepository;
     private final AuthTokenRepository tokenRepository;
+    private final TokenEpochService tokenEpochService;
+    private final RateLimiter rateLimiter;
     private final JWTService jwtService;
     private final PasswordEncoder passwordEncoder;
-    private final AuthenticationManager authenticationManager;
     private final IEmailService emailService;
 
     @Value("${spring.mail.enable}")
@@ -54,11 +53,18 @@ public class AuthenticationServiceImpl implements IAuthenticationService {
         DefaultApiResponse<AuthorizationResponseDto> response = new DefaultApiResponse<>();
         log.info("Performing Authentication and Processing Login Request for USER with emailAddress: {}.", requestBody.emailAddress());
         Employer employer = new Employer();
+
+        // Per account on top of the per-IP limit, so spreading guesses over many addresses does not help
+        long waitNanos = rateLimiter.tryAcquire("login-account", requestBody.emailAddress());
+        if (waitNanos > 0)
+            throw new TooManyRequestsException("Too many login attempts: try again later",
+                    Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999)));
+
         try {
             // Validate the login request data
             LoginRequestDto.validate(requestBody);
 
-            Optional<Employer> employerOpt = employerRepository.findByEmailAddress(requestBody.emailAddress());
+            Optional<Employer> employerOpt = employerRepository.findForLoginByEmailAddress(requestBody.emailAddress());
 
             if(employerOpt.isPresent()){
                 employer = employerOpt.get();
@@ -70,6 +76,12 @@ public class AuthenticationServiceImpl implements IAuthenticationService {
                     response.setStatusMessage("Invalid Password");
                     return response;
                 }
+
+                // Hashes made with an older BCrypt strength are replaced while the raw password is at hand
+                if(passwordEncoder.upgradeEncoding(employer.getPassword())){
+                    employerRepository.updatePassword(employer.getEmployerId(), passwordEncoder.encode(requestBody.password()));
+                    log.info("Upgraded password hash for USER {}.", requestBody.emailAddress());
+                }
             } else {
                 log.warn("USER with emailAddress {} not found in the database.", requestBody.emailAddress());
                 response.setStatusCode(STATUS_400);
@@ -83,10 +95,6 @@ public class AuthenticationServiceImpl implements IAuthenticationService {
             AuthorizationResponseDto authorisationResponseDto = new AuthorizationResponseDto(
                     result.accessToken(), result.refreshToken(), getLastUpdatedAt(), "1hr","24hrs", null);
 
-            // Authenticate the user with the provided credentials
-            authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(requestBody.emailAddress(), requestBody.password()));
-
             //====== Email Service ======//
             if (enableEmail){
                 log.info("===== Email Enabled =====");
@@ -125,24 +133,31 @@ public class AuthenticationServiceImpl implements IAuthenticationService {
         DefaultApiResponse<AuthorizationResponseDto> response = new DefaultApiResponse<>();
 
         try {
-            String userEmail = jwtService.extractUsername(requestBody.refreshToken());
-            log.info("Email of the Refresh Token: {}", userEmail);
+            String employerId = jwtService.extractSubject(requestBody.refreshToken());
+            log.info("Employer of the Refresh Token: {}", employerId);
 
             log.info("Checking if Refresh token has expired.");
             if(jwtService.isTokenExpired(requestBody.refreshToken())){
                 response.setStatusCode(STATUS_400);
                 response.setStatusMessage("Refresh Token Expired: User needs to Log in Again");
-                log.warn("Refresh Token has expired for user {}: {}", userEmail, requestBody.refreshToken());
+                log.warn("Refresh Token has expired for user {}: {}", employerId, requestBody.refreshToken());
                 return response;
             }
 
-            Optional<Employer> existingUserAccount = employerRepository.findByEmailAddress(userEmail);
+            Optional<Employer> existingUserAccount = employerRepository.findForLoginByEmployerId(UUID.fromString(employerId));
             if(existingUserAccount.isPresent()){
                 Employer employer = existingUserAccount.get();
 
-                log.info("Verifying Token is valid and properly signed for user {}.", userEmail);
+                log.info("Verifying Token is valid and properly signed for user {}.", employerId);
                 if(jwtService.isRefreshTokenValid(requestBody.refreshToken(), employer)){
-                    log.info("Generating New Token for user {}.", userEmail);
+                    // Each refresh token can be exchanged once
+                    if(tokenRepository.revokeByRefreshTokenHash(JWTService.hash(requestBody.refreshToken()), LocalDateTime.now()) == 0){
+                        response.setStatusCode(STATUS_400);
+                        response.setStatusMessage("Refresh Token Already Used: User needs to Log in Again");
+                        log.warn("Refresh Token for user {} is unknown or was already used.", employerId);
+                        return response;
+                    }
+                    log.info("Generating New Token for user {}.", employerId);
 
                     // Revoke old tokens.
                     revokeOldTokens(employer);
@@ -156,7 +171,7 @@ public class AuthenticationServiceImpl implements IAuthenticationService {
                             result.accessToken, result.refreshToken, getLastUpdatedAt(), "1hr", "24hrs" ,null);
                     response.setData(responseDto);
                 } else {
-                    log.warn("Invalid Token signature for user {}.", userEmail);
+                    log.warn("Invalid Token signature for user {}.", employerId);
                 }
             }
         } catch (RuntimeException ex){
@@ -165,6 +180,20 @@ public class AuthenticationServiceImpl implements IAuthenticationService {
         return response;
     }
 
+    @Override
+    public DefaultApiResponse<?> logout() {
+        DefaultApiResponse<?> response = new DefaultApiResponse<>();
+        UUID employerId = TenantContextHolder.getContext().employerId();
+
+        // Signs the employer out everywhere: all access and refresh tokens stop working
+        tokenEpochService.revokeAll(employerId);
+
+        response.setStatusCode(REQUEST_SUCCESS);
+        response.setStatusMessage("Successfully Logged Out");
+        log.info("Employer {} logged out.", employerId);
+        return response;
+    }
+
     private String getLastUpdatedAt(){
         return LocalDateTime.now().toString().replace("T", " ").substring(0, 16);
     }
@@ -174,25 +203,18 @@ public class AuthenticationServiceImpl implements IAuthenticationService {
         log.info("Generating Access Token and Refresh Token for USER");
 
         UUID companyId;
-        String lastCompanyId;
+        UUID lastCompanyId;
 
         AuthToken authToken;
         Optional<AuthToken> authTokenOpt = tokenRepository.findFirstByEmployer_EmployerIdOrderByCreatedAtDesc(employer.getEmployerId());
         if (authTokenOpt.isPresent()) {
             authToken = authTokenOpt.get();
 
-            // Extract company ID from the last token's claims if present
-            try {
-                Claims tokenClaims = jwtService.extractClaims(authToken.getAccessToken(), Function.identity());
-                lastCompanyId = (String) tokenClaims.get("activeCompanyID");
-            } catch (ExpiredJwtException ex) {
-                Claims tokenClaims = ex.getClaims(); // Extract claims from the expired token
-                lastCompanyId = (String) tokenClaims.get("activeCompanyID");
-                // Handle logic with the expired token claims
-            }
+            // The company the last session was acting as is stored with it
+            lastCompanyId = authToken.getActiveCompanyId();
 
-            if (lastCompanyId != null && !lastCompanyId.isEmpty()) {
-                companyId = UUID.fromString(lastCompanyId);
+            if (lastCompanyId != null) {
+                companyId = lastCompanyId;
                 log.info("Found last active company ID from the previous token: {}", companyId);
             } else {
                 // If no valid company ID in token, use the first company in employer's company list
@@ -210,35 +232,25 @@ public class AuthenticationServiceImpl implements IAuthenticationService {
         }
 
         String jwtToken = jwtService.createJWT(employer, companyId);
-        String refreshToken = jwtService.generateRefreshToken(generateRefreshTokenClaims(employer), employer);
+        String refreshToken = jwtService.generateRefreshToken(employer);
 
         accessAndRefreshToken result = new accessAndRefreshToken(jwtToken, refreshToken);
-        saveUserAccountToken(employer, result.accessToken, result.refreshToken);
+        saveUserAccountToken(employer, companyId, result.accessToken, result.refreshToken);
 
         return result;
     }
 
-    private @NotNull HashMap<String, Object> generateRefreshTokenClaims(Employer employer){
-        // Log the process of generating refresh token claims
-        log.info("Generating Refresh Token Claims");
-
-        HashMap<String, Object> claims = new HashMap<>();
-        claims.put("username", employer.getUsername());
-        claims.put("email", employer.getEmailAddress());
-        claims.put("employerId", employer.getEmployerId());
-        return claims;
-    }
-
-    private void saveUserAccountToken(Employer employer, String jwtToken, String refreshToken){
+    private void saveUserAccountToken(Employer employer, UUID companyId, String jwtToken, String refreshToken){
         // Log the process of saving tokens
         log.info("Saving tokens for USER {}", employer.getEmailAddress());
 
-        // Save the generated access and refresh tokens for the customer
+        // Save digests of the generated access and refresh tokens for the customer
         AuthToken token = AuthToken.builder()
                 .employer(employer)
-                .accessToken(jwtToken)
-                .refreshToken(refreshToken)
-                .expired(false)
+                .accessTokenHash(JWTService.hash(jwtToken))
+                .refreshTokenHash(JWTService.hash(refreshToken))
+                .activeCompanyId(companyId)
+                .expiresAt(LocalDateTime.now().plus(JWTService.REFRESH_TOKEN_VALIDITY))
                 .revoked(false)
                 .build();
         tokenRepository.save(token);
@@ -251,20 +263,8 @@ public class AuthenticationServiceImpl implements IAuthenticationService {
         // Log the process of revoking old tokens
         log.info("Revoking old tokens for employer with email {}", employer.getEmailAddress());
 
-        // Revoke all old tokens for the customer
-        List<AuthToken> validTokens = tokenRepository.findAllByEmployer_EmployerId(employer.getEmployerId());
-        if (validTokens.isEmpty()){
-            log.info("No valid tokens found for employer {}.", employer.getEmailAddress());
-            return;
-        }
-        validTokens.forEach(token -> {
-            token.setRevoked(true);
-            token.setExpired(true);
-        });
-        tokenRepository.saveAll(validTokens);
-
-        // Log successful token revocation
-        log.info("Revoked old tokens for customer {}.", employer.getEmailAddress());
+        // One UPDATE of the employer's token epoch invalidates every token issued before it
+        tokenEpochService.revokeAll(employer.getEmployerId());
     }
 
     private static Context createEmailContext(String firstName, String frontendUrl){
@@ -1,5 +1,7 @@
 package com.aalto.paycraft.service.impl;
 
+import com.aalto.paycraft.config.TenantContext;
+import com.aalto.paycraft.config.TenantContextHolder;
 import com.aalto.paycraft.constants.PayCraftConstant;
 import com.aalto.paycraft.dto.CompanyDTO;
 import com.aalto.paycraft.dto.CompanyUpdateDTO;
@@ -12,10 +14,6 @@ import com.aalto.paycraft.mapper.CompanyMapper;
 import com.aalto.paycraft.repository.CompanyRepository;
 import com.aalto.paycraft.repository.EmployerRepository;
 import com.aalto.paycraft.service.ICompanyService;
-import com.aalto.paycraft.service.JWTService;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.ExpiredJwtException;
-import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,7 +23,6 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.UUID;
-import java.util.function.Function;
 
 import static com.aalto.paycraft.constants.PayCraftConstant.STATUS_400;
 
@@ -35,19 +32,15 @@ public class CompanyServiceImpl implements ICompanyService {
     private static final Logger log = LoggerFactory.getLogger(CompanyServiceImpl.class);
     private final CompanyRepository companyRepository;
     private final EmployerRepository employerRepository;
-    private final JWTService jwtService;
-    private final HttpServletRequest request;
 
-    // Extract the Access Token from the request
-    private String EMPLOYER_ACCESS_TOKEN() {
-        return request.getHeader("Authorization").substring(7); // Remove "Bearer " prefix
-    }
-
-    // Extract employer-related ID from the JWT token claims
+    // Read a tenant id resolved once per request by JWTSecurityFilter
     private UUID GET_ID(String parameter) {
-        verifyTokenExpiration(EMPLOYER_ACCESS_TOKEN());
-        Claims claims = jwtService.extractClaims(EMPLOYER_ACCESS_TOKEN(), Function.identity()); // Get all claims
-        return UUID.fromString((String) claims.get(parameter)); // Get specific claim by parameter
+        TenantContext context = TenantContextHolder.getContext();
+        return switch (parameter) {
+            case "userID" -> context.employerId();
+            case "activeCompanyID" -> context.activeCompanyId();
+            default -> throw new IllegalArgumentException("Unknown tenant parameter: " + parameter);
+        };
     }
 
     @Override
@@ -184,13 +177,8 @@ public class CompanyServiceImpl implements ICompanyService {
         // Fetch the active company from token claims
         Company company = verifyAndFetchCompanyById(GET_ID("activeCompanyID"));
 
-
-        verifyTokenExpiration(EMPLOYER_ACCESS_TOKEN());
-        Claims claims = jwtService.extractClaims(EMPLOYER_ACCESS_TOKEN(), Function.identity()); // Get all claims
-        List<String> companyIds = (List<String>) claims.get("companyIds");
-        if(companyIds.size() > 1) {
-            companyRepository.delete(company);
-        }else{
+        // Counted from the database; the company list in the token is stale once a company is added
+        if(companyRepository.countByEmployer_EmployerId(GET_ID("userID")) <= 1) {
             response.setStatusCode(STATUS_400);
             response.setStatusMessage("Cannot delete the only existing company");
             return response;
@@ -259,12 +247,4 @@ public class CompanyServiceImpl implements ICompanyService {
                 () -> new RuntimeException("Employer ID does not exist: " + employerId)
         );
     }
-
-    // Helper method to verify JWT token expiration
-    private void verifyTokenExpiration(String token) {
-        if (jwtService.isTokenExpired(token)) {
-            log.warn("JWT token has expired");
-            throw new ExpiredJwtException(null, null, "Access Token has expired");
-        }
-    }
 }
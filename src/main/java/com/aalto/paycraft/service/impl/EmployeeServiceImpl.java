@@ -1,5 +1,6 @@
 package com.aalto.paycraft.service.impl;
 
+import com.aalto.paycraft.config.TenantContextHolder;
 import com.aalto.paycraft.constants.PayCraftConstant;
 import com.aalto.paycraft.dto.DefaultApiResponse;
 import com.aalto.paycraft.dto.EmployeeDto;
@@ -9,44 +10,33 @@ import com.aalto.paycraft.entity.Employee;
 import com.aalto.paycraft.mapper.EmployeeMapper;
 import com.aalto.paycraft.repository.CompanyRepository;
 import com.aalto.paycraft.repository.EmployeeRepository;
+import com.aalto.paycraft.repository.PayrollRepository;
 import com.aalto.paycraft.service.IEmployeeService;
-import com.aalto.paycraft.service.JWTService;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.ExpiredJwtException;
-import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service @RequiredArgsConstructor @Slf4j
 public class EmployeeServiceImpl implements IEmployeeService {
-    private final HttpServletRequest request;
-    private final JWTService jwtService;
     private final EmployeeRepository employeeRepository;
     private final CompanyRepository companyRepository;
+    private final PayrollRepository payrollRepository;
 
-    // Gets the AccessToken from the Request Sent
-    private String EMPLOYER_ACCESS_TOKEN(){
-        return request.getHeader("Authorization").substring(7);
-    }
-
-    // Get the current company the employee is being created under
+    // Get the current company the employee is being created under, resolved once by JWTSecurityFilter
     private UUID COMPANY_ID(){
-        verifyTokenExpiration(EMPLOYER_ACCESS_TOKEN());
-        Claims claims = jwtService.extractClaims(EMPLOYER_ACCESS_TOKEN(), Function.identity());  // Function.identity() returns the same object
-        return UUID.fromString((String) claims.get("activeCompanyID"));
+        return TenantContextHolder.getContext().activeCompanyId();
     }
 
     @Override
     public DefaultApiResponse<EmployeeDto> createEmployee(EmployeeRequestDto requestBody) {
-        verifyTokenExpiration(EMPLOYER_ACCESS_TOKEN());
         DefaultApiResponse<EmployeeDto> response = new DefaultApiResponse<>();
 
         // Verify if the record already exists
@@ -108,12 +98,13 @@ public class EmployeeServiceImpl implements IEmployeeService {
     }
 
     @Override
+    @Transactional
     public DefaultApiResponse<EmployeeDto> updateEmployee(EmployeeRequestDto requestBody, String employeeId) {
         DefaultApiResponse<EmployeeDto> response = new DefaultApiResponse<>();
         Company company = new Company();
 
-        // Fetch the employee profile or throw exception if not found
-        Employee employee = employeeRepository.findByEmployeeId(UUID.fromString(employeeId))
+        // Fetch and lock the employee profile or throw exception if not found
+        Employee employee = employeeRepository.findByEmployeeIdForUpdate(UUID.fromString(employeeId))
                 .orElseThrow(() -> new RuntimeException("Employee Id is invalid"));
 
         // Verify that the company profile matches
@@ -130,11 +121,17 @@ public class EmployeeServiceImpl implements IEmployeeService {
             company = companyProfileOpt.get();
         }
 
+        BigDecimal previousSalary = employee.getSalaryAmount();
         EmployeeMapper.updateEntityFromDto(employee,requestBody);
         employee.setCompany(company);
 
         // Save the updated employee profile
-        employeeRepository.save(employee);
+        employeeRepository.saveAndFlush(employee);
+
+        // Carry a salary change into the totals of every payroll the employee is on
+        BigDecimal salaryDelta = employee.getSalaryAmount().subtract(previousSalary);
+        if (salaryDelta.signum() != 0)
+            payrollRepository.adjustTotalsForEmployee(employee.getEmployeeId().toString(), salaryDelta);
 
         // Set response details with updated employee data
         EmployeeDto responseData = EmployeeMapper.toDTO(employee);
@@ -206,14 +203,6 @@ public class EmployeeServiceImpl implements IEmployeeService {
         return companyProfileOpt.get();
     }
 
-    /* Method to Verify Token Expiration */
-    private void verifyTokenExpiration(String token) {
-        if (jwtService.isTokenExpired(token)) {
-            log.warn("Token has expired");
-            throw new ExpiredJwtException(null, null, "Access Token has expired");
-        }
-    }
-
     // Verify if the record already exists by checking the email and phone number within the same company profile
     private void verifyRecord(EmployeeRequestDto requestBody, UUID companyId) {
         log.info("Verifying record of employee profile: checking for existing account");
@@ -1,26 +1,23 @@
 package com.aalto.paycraft.service.impl;
 
+import com.aalto.paycraft.config.TenantContextHolder;
 import com.aalto.paycraft.constants.PayCraftConstant;
 import com.aalto.paycraft.dto.DefaultApiResponse;
 import com.aalto.paycraft.dto.EmployerDTO;
 import com.aalto.paycraft.dto.EmployerPasswordUpdateDTO;
 import com.aalto.paycraft.dto.EmployerUpdateDTO;
-import com.aalto.paycraft.entity.AuthToken;
 import com.aalto.paycraft.entity.Employer;
 import com.aalto.paycraft.entity.VirtualAccount;
 import com.aalto.paycraft.exception.EmployerAlreadyExists;
 import com.aalto.paycraft.exception.EmployerNotFound;
 import com.aalto.paycraft.exception.PasswordUpdateException;
 import com.aalto.paycraft.mapper.EmployerMapper;
-import com.aalto.paycraft.repository.AuthTokenRepository;
 import com.aalto.paycraft.repository.EmployerRepository;
 import com.aalto.paycraft.service.IEmailService;
 import com.aalto.paycraft.service.IEmployerService;
 import com.aalto.paycraft.service.IVirtualAccountService;
-import com.aalto.paycraft.service.JWTService;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.ExpiredJwtException;
-import jakarta.servlet.http.HttpServletRequest;
+import com.aalto.paycraft.service.TokenEpochService;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,10 +27,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.thymeleaf.context.Context;
 
-import java.util.List;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
@@ -41,22 +39,13 @@ public class EmployerServiceImpl implements IEmployerService {
     private static final Logger log = LoggerFactory.getLogger(EmployerServiceImpl.class);
     private final EmployerRepository employerRepository;
     private final PasswordEncoder passwordEncoder;
-    private final AuthTokenRepository tokenRepository;
+    private final TokenEpochService tokenEpochService;
     private final IEmailService emailService;
-    private final JWTService jwtService;
-    private final HttpServletRequest request;
     private final IVirtualAccountService virtualAccountService;
 
-    // Gets the AccessToken from the request header
-    private String EMPLOYER_ACCESS_TOKEN() {
-        return request.getHeader("Authorization").substring(7); // Removes "Bearer " prefix
-    }
-
-    // Get the ID of the employer making the request
+    // Get the ID of the employer making the request, resolved once by JWTSecurityFilter
     private UUID EMPLOYER_ID() {
-        verifyTokenExpiration(EMPLOYER_ACCESS_TOKEN());
-        Claims claims = jwtService.extractClaims(EMPLOYER_ACCESS_TOKEN(), Function.identity());
-        return UUID.fromString((String) claims.get("userID"));
+        return TenantContextHolder.getContext().employerId();
     }
 
     @Value("${spring.mail.enable}")
@@ -65,6 +54,27 @@ public class EmployerServiceImpl implements IEmployerService {
     @Value("${frontend.url}")
     private String frontendUrl;
 
+    @Value("${employer.profile-cache.max-size:10000}")
+    private int profileCacheSize;
+
+    @Value("${employer.profile-cache.ttl-ms:300000}")
+    private long profileCacheTtlMillis;
+
+    private record CachedProfile(EmployerDTO profile, long loadedAt) {}
+
+    // Profile data no longer travels in the access token, so it is cached here instead; access-ordered LRU
+    private Map<UUID, CachedProfile> profiles;
+
+    @PostConstruct
+    void initProfileCache() {
+        profiles = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, CachedProfile> eldest) {
+                return size() > profileCacheSize;
+            }
+        });
+    }
+
     @Override
     public DefaultApiResponse<EmployerDTO> createEmployer(EmployerDTO employerDTO) {
         DefaultApiResponse<EmployerDTO> response = new DefaultApiResponse<>();
@@ -112,16 +122,24 @@ public class EmployerServiceImpl implements IEmployerService {
     @Override
     public DefaultApiResponse<EmployerDTO> getEmployer() {
         DefaultApiResponse<EmployerDTO> response = new DefaultApiResponse<>();
-        Employer employer = verifyAndFetchById(EMPLOYER_ID());
-        EmployerDTO employerDTO = EmployerMapper.toDTO(employer);
+        UUID employerId = EMPLOYER_ID();
 
-        // Prevent returning sensitive information
-        employerDTO.setPassword(null);
-        employerDTO.setBvn(null);
+        // Entries expire so edits made on other instances show up; edits made here drop the entry at once
+        CachedProfile cached = profiles.get(employerId);
+        if (cached == null || System.currentTimeMillis() - cached.loadedAt() > profileCacheTtlMillis) {
+            EmployerDTO employerDTO = EmployerMapper.toDTO(verifyAndFetchById(employerId));
+
+            // Prevent returning sensitive information
+            employerDTO.setPassword(null);
+            employerDTO.setBvn(null);
+
+            cached = new CachedProfile(employerDTO, System.currentTimeMillis());
+            profiles.put(employerId, cached);
+        }
 
         response.setStatusCode(PayCraftConstant.REQUEST_SUCCESS);
         response.setStatusMessage("Employer details");
-        response.setData(employerDTO);
+        response.setData(cached.profile());
         return response;
     }
 
@@ -132,6 +150,7 @@ public class EmployerServiceImpl implements IEmployerService {
         Employer employer = verifyAndFetchById(EMPLOYER_ID());
         updateRecord(employer, employerUpdateDTO); // Update employer details
         employerRepository.save(employer);
+        profiles.remove(employer.getEmployerId());
 
         response.setStatusCode(PayCraftConstant.REQUEST_SUCCESS);
         response.setStatusMessage("Employer updated successfully");
@@ -160,6 +179,7 @@ public class EmployerServiceImpl implements IEmployerService {
         employer.setBvn(employer.getBvn() + "_deleted_" + UUID.randomUUID());
         revokeAllTokens(employer); // Revoke tokens
         employerRepository.save(employer);
+        profiles.remove(employer.getEmployerId());
 
         response.setStatusCode(PayCraftConstant.REQUEST_SUCCESS);
         response.setStatusMessage("Employer deleted successfully");
@@ -190,6 +210,7 @@ public class EmployerServiceImpl implements IEmployerService {
 
         log.info("Updating password for employer ID: {}", employer.getEmployerId());
         employerRepository.save(updatePassword(employer, employerPasswordUpdateDTO.getNewPassword()));
+        revokeAllTokens(employer); // Sessions opened with the old password end here
 
         response.setStatusCode(PayCraftConstant.REQUEST_SUCCESS);
         response.setStatusMessage("Employer password updated successfully");
@@ -268,29 +289,9 @@ public class EmployerServiceImpl implements IEmployerService {
         return emailContext;
     }
 
-    // Verify token expiration
-    private void verifyTokenExpiration(String token) {
-        if (jwtService.isTokenExpired(token)) {
-            log.warn("Token has expired for employer ID: {}", EMPLOYER_ID());
-            throw new ExpiredJwtException(null, null, "Access Token has expired");
-        }
-    }
-
     // Revoke all tokens related to the employer
     private void revokeAllTokens(Employer employer) {
         log.info("Revoking old tokens for employer {}", employer.getEmailAddress());
-        List<AuthToken> validTokens = tokenRepository.findAllByEmployer_EmployerId(employer.getEmployerId());
-
-        if (validTokens.isEmpty()) {
-            log.info("No valid tokens found for employer with email {}.", employer.getEmailAddress());
-            return;
-        }
-
-        validTokens.forEach(token -> {
-            token.setRevoked(true);
-            token.setExpired(true);
-        });
-        tokenRepository.saveAll(validTokens);
-        log.info("Revoked old tokens for employer {}.", employer.getEmailAddress());
+        tokenEpochService.revokeAll(employer.getEmployerId());
     }
 }
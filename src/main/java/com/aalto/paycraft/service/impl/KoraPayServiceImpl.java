@@ -2,7 +2,9 @@ package com.aalto.paycraft.service.impl;
 
 import com.aalto.paycraft.dto.*;
 import com.aalto.paycraft.entity.Employer;
+import com.aalto.paycraft.service.IKoraPayAsyncService;
 import com.aalto.paycraft.service.IKoraPayService;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -13,7 +15,6 @@ import org.springframework.stereotype.Service;
 import javax.crypto.Cipher;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.io.IOException;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.net.http.HttpClient;
@@ -21,14 +22,18 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
 import static com.aalto.paycraft.constants.PayCraftConstant.REQUEST_SUCCESS;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
-public class KoraPayServiceImpl implements IKoraPayService {
+public class KoraPayServiceImpl implements IKoraPayService, IKoraPayAsyncService {
 
     @Value("${kora-secret}")
     private String SECRET_KEY;
@@ -42,42 +47,50 @@ public class KoraPayServiceImpl implements IKoraPayService {
     @Value("${kora-public}")
     private String PUBLIC_KEY;
 
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    @Value("${kora-request-timeout-ms:30000}")
+    private long REQUEST_TIMEOUT_MS;
+
+    @Value("${kora-bulk-request-timeout-ms:60000}")
+    private long BULK_REQUEST_TIMEOUT_MS;
+
+    private final HttpClient httpClient;  // Shared client backed by the bounded koraPayExecutor
     private final ObjectMapper jacksonObjectMapper;
 
     private final String BASE_URL = "https://api.korapay.com/merchant/api/v1/";
 
+    /*
+     * The blocking IKoraPayService methods wait on the async variants,
+     * so both APIs share one request builder, timeout and response parser.
+     */
+
     // ========== VIRTUAL BANK ACCOUNT RELATED =========
     @Override
     public DefaultKoraResponse<VirtualAccountResponseDTO> createVirtualAccount(Employer employer) {
+        return await(createVirtualAccountAsync(employer));
+    }
+
+    @Override
+    public CompletableFuture<DefaultKoraResponse<VirtualAccountResponseDTO>> createVirtualAccountAsync(Employer employer) {
         // Create request body for the API call
         Map<String, Object> requestBody = createRequestBody(employer);
 
-        // Initialize the default response object
-        DefaultKoraResponse<VirtualAccountResponseDTO> response = new DefaultKoraResponse<>();
+        // Convert the request body map to a JSON string
+        String requestBodyJson = toJson(requestBody);
+        log.debug("Request body JSON: {}", requestBodyJson); // Log the request body for debugging
 
-        try {
-            // Convert the request body map to a JSON string
-            String requestBodyJson = jacksonObjectMapper.writeValueAsString(requestBody);
-            log.debug("Request body JSON: {}", requestBodyJson); // Log the request body for debugging
-
-            // Build the HTTP request to create a virtual bank account
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(BASE_URL + "/virtual-bank-account"))
-                    .header("Content-Type", "application/json")
-                    .header("Authorization", "Bearer " + SECRET_KEY)
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
-                    .build();
-            log.info("Sending request to create virtual bank account for employer: {}", employer.getEmailAddress());
+        // Build the HTTP request to create a virtual bank account
+        HttpRequest request = requestBuilder(BASE_URL + "/virtual-bank-account", SECRET_KEY, REQUEST_TIMEOUT_MS)
+                .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
+                .build();
+        log.info("Sending request to create virtual bank account for employer: {}", employer.getEmailAddress());
 
-            // Send the request and capture the response
-            HttpResponse<String> httpResponse = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return sendAsync(request).thenApply(httpResponse -> {
+            DefaultKoraResponse<VirtualAccountResponseDTO> response = new DefaultKoraResponse<>();
 
             // Handle successful response
             if (httpResponse.statusCode() == 200) {
-                response = jacksonObjectMapper.readValue(httpResponse.body(),
-                        new TypeReference<DefaultKoraResponse<VirtualAccountResponseDTO>>() {
-                        });
+                response = readResponse(httpResponse.body(),
+                        new TypeReference<DefaultKoraResponse<VirtualAccountResponseDTO>>() {});
                 log.info("Virtual bank account created successfully for employer: {}", employer.getEmailAddress());
             } else {
                 // Handle non-200 response from the API
@@ -86,74 +99,64 @@ public class KoraPayServiceImpl implements IKoraPayService {
                 log.error("Failed to create virtual bank account. Status Code: {}, Response: {}",
                         httpResponse.statusCode(), httpResponse.body());
             }
-        } catch (Exception e) {
-            // Handle any exceptions during the process
-            log.error("Error while creating virtual bank account for employer {}: {}", employer.getEmailAddress(), e.getMessage());
-            throw new RuntimeException(e.getMessage());
-        }
-
-        // Return the final response object
-        return response;
+            return response;
+        }).whenComplete((response, ex) -> {
+            if (ex != null)
+                log.error("Error while creating virtual bank account for employer {}: {}", employer.getEmailAddress(), ex.getMessage());
+        });
     }
 
     @Override
     public DefaultKoraResponse<VBATransactionDTO> getTransactionOfVBA(String accountNumber, Employer employer,
                                                                       String startDate, String endDate, Integer page, Integer limit) {
+        return await(getTransactionOfVBAAsync(accountNumber, employer, startDate, endDate, page, limit));
+    }
 
-        // Initializing the default response object
-        DefaultKoraResponse<VBATransactionDTO> response = new DefaultKoraResponse<>();
-        try {
-            // Build the base URL with the mandatory account number
-            log.info(accountNumber);
-            StringBuilder urlBuilder = new StringBuilder(BASE_URL + "virtual-bank-account/transactions?account_number=" + accountNumber);
-            log.info(urlBuilder.toString());
-
-            // Add optional parameters if provided
-            if (startDate != null && !startDate.isEmpty()) {
-                urlBuilder.append("&start_date=").append(startDate);
-            }
-            if (endDate != null && !endDate.isEmpty()) {
-                urlBuilder.append("&end_date=").append(endDate);
-            }
-            if (page != null) {
-                urlBuilder.append("&page=").append(page);
-            }
-            if (limit != null) {
-                urlBuilder.append("&limit=").append(limit);
-            }
+    @Override
+    public CompletableFuture<DefaultKoraResponse<VBATransactionDTO>> getTransactionOfVBAAsync(String accountNumber, Employer employer,
+                                                                                             String startDate, String endDate, Integer page, Integer limit) {
+        // Build the base URL with the mandatory account number
+        StringBuilder urlBuilder = new StringBuilder(BASE_URL + "virtual-bank-account/transactions?account_number=" + accountNumber);
+
+        // Add optional parameters if provided
+        if (startDate != null && !startDate.isEmpty()) {
+            urlBuilder.append("&start_date=").append(startDate);
+        }
+        if (endDate != null && !endDate.isEmpty()) {
+            urlBuilder.append("&end_date=").append(endDate);
+        }
+        if (page != null) {
+            urlBuilder.append("&page=").append(page);
+        }
+        if (limit != null) {
+            urlBuilder.append("&limit=").append(limit);
+        }
+        log.info(urlBuilder.toString());
 
-            // Build the HTTP request to create a virtual bank account
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(urlBuilder.toString()))
-                    .header("Content-Type", "application/json")
-                    .header("Authorization", "Bearer " + SECRET_KEY)
-                    .GET().build();
+        HttpRequest request = requestBuilder(urlBuilder.toString(), SECRET_KEY, REQUEST_TIMEOUT_MS)
+                .GET().build();
 
-            log.info("Sending request to fetch VBA payments for employer: {}", employer.getEmailAddress());
+        log.info("Sending request to fetch VBA payments for employer: {}", employer.getEmailAddress());
 
-            // Send the request and capture the response
-            HttpResponse<String> httpResponse = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return sendAsync(request).thenApply(httpResponse -> {
+            DefaultKoraResponse<VBATransactionDTO> response = new DefaultKoraResponse<>();
 
             // Handle successful response
             if (httpResponse.statusCode() == 200) {
-                response = jacksonObjectMapper.readValue(httpResponse.body(),
-                        new TypeReference<DefaultKoraResponse<VBATransactionDTO>>() {
-                        });
+                response = readResponse(httpResponse.body(),
+                        new TypeReference<DefaultKoraResponse<VBATransactionDTO>>() {});
                 log.info("VBA Payment fetched successfully for employer: {}", employer.getEmailAddress());
-                log.info(response.toString());
             } else {
                 // Handle non-200 response from the API
                 response.setStatus(false);
                 response.setMessage("Error Fetching Payment: " + httpResponse.body());
                 log.error("Error Fetching Payment: {}", httpResponse.body());
             }
-        } catch (Exception e) {
-            // Handle any exceptions during the process
-            log.error("Error Fetching Payment for employer {}: {}", employer.getEmailAddress(), e.getMessage());
-            throw new RuntimeException(e.getMessage());
-        }
-        // Return the final response object
-        return response;
+            return response;
+        }).whenComplete((response, ex) -> {
+            if (ex != null)
+                log.error("Error Fetching Payment for employer {}: {}", employer.getEmailAddress(), ex.getMessage());
+        });
     }
 
     private Map<String, Object> createRequestBody(Employer employer) {
@@ -181,30 +184,27 @@ public class KoraPayServiceImpl implements IKoraPayService {
     // ==========  BANK TRANSFER RELATED OPERATION =========
     @Override
     public DefaultKoraResponse<BankTransferResponseDTO> initiateBankTransfer(BigDecimal amount, Employer employer) {
+        return await(initiateBankTransferAsync(amount, employer));
+    }
+
+    @Override
+    public CompletableFuture<DefaultKoraResponse<BankTransferResponseDTO>> initiateBankTransferAsync(BigDecimal amount, Employer employer) {
         log.info(WEBHOOK_URL);
-        HttpResponse<String> httpResponse;
-        DefaultKoraResponse<BankTransferResponseDTO> response = new DefaultKoraResponse<>();
-        try {
-            // Prepare request body
-            Map<String, Object> requestBody = createRequestBodyForTransfer(amount, "NGN", employer);
 
-            // Convert request body to JSON
-            String requestBodyJson = jacksonObjectMapper.writeValueAsString(requestBody);
+        // Prepare request body
+        Map<String, Object> requestBody = createRequestBodyForTransfer(amount, "NGN", employer);
 
-            // Build the request
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(BASE_URL + "charges/bank-transfer"))
-                    .header("Content-Type", "application/json")
-                    .header("Authorization", "Bearer " + SECRET_KEY)
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
-                    .build();
+        // Build the request
+        HttpRequest request = requestBuilder(BASE_URL + "charges/bank-transfer", SECRET_KEY, REQUEST_TIMEOUT_MS)
+                .POST(HttpRequest.BodyPublishers.ofString(toJson(requestBody)))
+                .build();
 
-            // Send the request and get the response
-            httpResponse = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return sendAsync(request).thenApply(httpResponse -> {
+            DefaultKoraResponse<BankTransferResponseDTO> response = new DefaultKoraResponse<>();
 
             // Parse the response
             if (httpResponse.statusCode() == 200) {
-                response = jacksonObjectMapper.readValue(httpResponse.body(),
+                response = readResponse(httpResponse.body(),
                         new TypeReference<DefaultKoraResponse<BankTransferResponseDTO>>() {});
 
                 log.info("Bank transfer SUCCESS {}",httpResponse);
@@ -217,10 +217,10 @@ public class KoraPayServiceImpl implements IKoraPayService {
                 response.setMessage("Error Initiating Bank Transfer: ");
             }
             return response;
-        } catch (Exception e) {
-            log.error("Error while initiating bank transfer: {}", e.getMessage());
-            throw new RuntimeException(e.getMessage());
-        }
+        }).whenComplete((response, ex) -> {
+            if (ex != null)
+                log.error("Error while initiating bank transfer: {}", ex.getMessage());
+        });
     }
 
     private Map<String, Object> createRequestBodyForTransfer(BigDecimal amount, String currency, Employer employer) {
@@ -254,42 +254,40 @@ public class KoraPayServiceImpl implements IKoraPayService {
 
     @Override
     public DefaultKoraResponse<List<BankTypeDTO>> listBanks() throws Exception {
-        DefaultKoraResponse<List<BankTypeDTO>> response = new DefaultKoraResponse<>();
+        return await(listBanksAsync());
+    }
 
+    @Override
+    public CompletableFuture<DefaultKoraResponse<List<BankTypeDTO>>> listBanksAsync() {
         // Create HTTP GET request to fetch all available bank codes for Nigeria
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create( BASE_URL + "misc/banks?countryCode=NG"))
-                .header("Authorization", "Bearer " + PUBLIC_KEY)
-                .header("Content-Type", "application/json")
+        HttpRequest request = requestBuilder(BASE_URL + "misc/banks?countryCode=NG", PUBLIC_KEY, 15000)  // Bank directory keeps its last copy if this is slow
                 .GET()
                 .build();
 
-        HttpResponse<String> httpResponse;
-        try {
-            // Send the request and receive the response
-            httpResponse = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e); // Log and rethrow any errors
-        }
-
-        if (httpResponse.statusCode() == 200) {
-            // Parse the response body to List<BankTypeDTO> if status code is 200 (OK)
-            response = jacksonObjectMapper.readValue(httpResponse.body(),
-                    new TypeReference<DefaultKoraResponse<List<BankTypeDTO>>>() {});
+        return sendAsync(request).thenApply(httpResponse -> {
+            DefaultKoraResponse<List<BankTypeDTO>> response = new DefaultKoraResponse<>();
 
-            log.info("Request for all available bank codes successful: Nigeria Only");
-        } else {
-            response.setStatus(false);  // Set status to false in case of failure
-            response.setMessage("Error Initiating Bank Transfer: ");
-        }
+            if (httpResponse.statusCode() == 200) {
+                // Parse the response body to List<BankTypeDTO> if status code is 200 (OK)
+                response = readResponse(httpResponse.body(),
+                        new TypeReference<DefaultKoraResponse<List<BankTypeDTO>>>() {});
 
-        return response;  // Return the final response
+                log.info("Request for all available bank codes successful: Nigeria Only");
+            } else {
+                response.setStatus(false);  // Set status to false in case of failure
+                response.setMessage("Error Initiating Bank Transfer: ");
+            }
+            return response;  // Return the final response
+        });
     }
 
     @Override
     public DefaultKoraResponse<BankAccountDTO> resolveBankAccount(String bankCode, String accountNumber) throws Exception {
-        DefaultKoraResponse<BankAccountDTO> response = new DefaultKoraResponse<>();
+        return await(resolveBankAccountAsync(bankCode, accountNumber));
+    }
 
+    @Override
+    public CompletableFuture<DefaultKoraResponse<BankAccountDTO>> resolveBankAccountAsync(String bankCode, String accountNumber) {
         log.info(accountNumber);
         // Prepare request payload (bankCode and accountNumber)
         Map<String, Object> requestBody = new HashMap<>();
@@ -297,133 +295,137 @@ public class KoraPayServiceImpl implements IKoraPayService {
         requestBody.put("account", accountNumber);
 
         // Convert request body to JSON format
-        String requestBodyJson = jacksonObjectMapper.writeValueAsString(requestBody);
+        String requestBodyJson = toJson(requestBody);
         log.info(requestBodyJson);
 
         // Create HTTP POST request to resolve bank account details
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(BASE_URL + "misc/banks/resolve"))
-                .header("Authorization", "Bearer " + PUBLIC_KEY)
-                .header("Content-Type", "application/json")
+        HttpRequest request = requestBuilder(BASE_URL + "misc/banks/resolve", PUBLIC_KEY, REQUEST_TIMEOUT_MS)
                 .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
                 .build();
 
-        HttpResponse<String> httpResponse;
-        try {
-            // Send the request and capture the response
-            httpResponse = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-
-        if (httpResponse.statusCode() == 200) {
-            // Deserialize the response body into BankTypeDTO if successful
-            response = jacksonObjectMapper.readValue(httpResponse.body(),
-                    new TypeReference<DefaultKoraResponse<BankAccountDTO>>() {});
+        return sendAsync(request).thenApply(httpResponse -> {
+            DefaultKoraResponse<BankAccountDTO> response = new DefaultKoraResponse<>();
 
-            log.info("Bank account resolved: {}", response);
-        } else {
-            log.info(response.toString());
+            if (httpResponse.statusCode() == 200) {
+                // Deserialize the response body into BankTypeDTO if successful
+                response = readResponse(httpResponse.body(),
+                        new TypeReference<DefaultKoraResponse<BankAccountDTO>>() {});
 
-            response.setStatus(false);  // Set error status if request fails
-            response.setMessage("Error Resolving Bank Account ");
-        }
+                log.info("Bank account resolved: {}", response);
+            } else {
+                log.info(response.toString());
 
-        return response;  // Return the resolved bank account details
+                response.setStatus(false);  // Set error status if request fails
+                response.setMessage("Error Resolving Bank Account ");
+            }
+            return response;  // Return the resolved bank account details
+        });
     }
 
     @Override
-    public DefaultKoraResponse<PayoutResponseDTO> requestPayout(String bankCode, String accountNumber, BigDecimal amount, Employer employer) throws Exception {
-        DefaultKoraResponse<PayoutResponseDTO> response = new DefaultKoraResponse<>();
+    public DefaultKoraResponse<PayoutResponseDTO> requestPayout(String reference, String bankCode, String accountNumber, BigDecimal amount, Employer employer) throws Exception {
+        return await(requestPayoutAsync(reference, bankCode, accountNumber, amount, employer));
+    }
 
+    @Override
+    public CompletableFuture<DefaultKoraResponse<PayoutResponseDTO>> requestPayoutAsync(String reference, String bankCode, String accountNumber, BigDecimal amount, Employer employer) {
         // Generate the request body for a payout
-        Map<String, Object> requestBody = generatePayoutRequestBody(amount, employer, bankCode, accountNumber, "NGN");
-
-        // Convert the request body to JSON format
-        String requestBodyJson = jacksonObjectMapper.writeValueAsString(requestBody);
+        Map<String, Object> requestBody = generatePayoutRequestBody(reference, amount, employer, bankCode, accountNumber, "NGN");
 
         // Create HTTP POST request to initiate a payout
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(BASE_URL + "transactions/disburse"))
-                .header("Authorization", "Bearer " + SECRET_KEY)
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
+        HttpRequest request = requestBuilder(BASE_URL + "transactions/disburse", SECRET_KEY, REQUEST_TIMEOUT_MS)
+                .POST(HttpRequest.BodyPublishers.ofString(toJson(requestBody)))
                 .build();
 
-        HttpResponse<String> httpResponse;
-        try {
-            // Send the request and capture the response
-            httpResponse = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-
-        log.info(httpResponse.body());
-
-        if (httpResponse.statusCode() == 200) {
-            // Deserialize the response into PayoutResponseDTO if successful
-            response = jacksonObjectMapper.readValue(httpResponse.body(),
-                    new TypeReference<DefaultKoraResponse<PayoutResponseDTO>>() {});
+        return sendAsync(request).thenApply(httpResponse -> {
+            DefaultKoraResponse<PayoutResponseDTO> response = new DefaultKoraResponse<>();
+            log.info(httpResponse.body());
 
-            log.info("Payout Request Successful: {}", httpResponse.toString());
-        } else {
-            log.info("Payout Request FAILED: {}", httpResponse);
+            if (httpResponse.statusCode() == 200) {
+                // Deserialize the response into PayoutResponseDTO if successful
+                response = readResponse(httpResponse.body(),
+                        new TypeReference<DefaultKoraResponse<PayoutResponseDTO>>() {});
 
-            response.setStatus(false);  // Set failure status in case of error
-            response.setMessage("Error making payout request: {}");
-        }
+                log.info("Payout Request Successful: {}", httpResponse.toString());
+            } else {
+                log.info("Payout Request FAILED: {}", httpResponse);
 
-        return response;  // Return the payout response
+                response.setStatus(false);  // Set failure status in case of error
+                response.setMessage("Error making payout request: {}");
+            }
+            return response;  // Return the payout response
+        });
     }
 
     @Override
-    public DefaultKoraResponse<BulkPayoutResponseDTO> requestBulkPayout(List<PayoutData> payrollList, Employer employer) throws Exception {
-        DefaultKoraResponse<BulkPayoutResponseDTO> response = new DefaultKoraResponse<>();
+    public DefaultKoraResponse<BulkPayoutResponseDTO> requestBulkPayout(String batchReference, List<PayoutData> payrollList, Employer employer) throws Exception {
+        return await(requestBulkPayoutAsync(batchReference, payrollList, employer));
+    }
 
+    @Override
+    public CompletableFuture<DefaultKoraResponse<BulkPayoutResponseDTO>> requestBulkPayoutAsync(String batchReference, List<PayoutData> payrollList, Employer employer) {
         // Generate the request body for a bulk payout
-        Map<String, Object> requestBody = generateBulkPayoutRequestBody(payrollList, employer);
-
-        // Convert the request body to JSON format
-        String requestBodyJson = jacksonObjectMapper.writeValueAsString(requestBody);
+        Map<String, Object> requestBody = generateBulkPayoutRequestBody(batchReference, payrollList, employer);
 
         // Create HTTP POST request for bulk payouts
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(BASE_URL + "transactions/disburse/bulk"))
-                .header("Authorization", "Bearer " + SECRET_KEY)
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
+        HttpRequest request = requestBuilder(BASE_URL + "transactions/disburse/bulk", SECRET_KEY, BULK_REQUEST_TIMEOUT_MS)
+                .POST(HttpRequest.BodyPublishers.ofString(toJson(requestBody)))
                 .build();
 
-        HttpResponse<String> httpResponse;
-        try {
-            // Send the request and capture the response
-            httpResponse = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        return sendAsync(request).thenApply(httpResponse -> {
+            DefaultKoraResponse<BulkPayoutResponseDTO> response = new DefaultKoraResponse<>();
 
-        if (httpResponse.statusCode() == 200) {
-            // Deserialize the response body into BulkPayoutResponseDTO if successful
-            response = jacksonObjectMapper.readValue(httpResponse.body(),
-                    new TypeReference<DefaultKoraResponse<BulkPayoutResponseDTO>>() {});
+            if (httpResponse.statusCode() == 200) {
+                // Deserialize the response body into BulkPayoutResponseDTO if successful
+                response = readResponse(httpResponse.body(),
+                        new TypeReference<DefaultKoraResponse<BulkPayoutResponseDTO>>() {});
 
-            log.info("Bulk Payout Request Successful: {}", httpResponse.body());
-        } else {
-            log.info("Bulk Payout Request FAILED: {}", httpResponse.body());
-            response.setStatus(false);  // Set failure status in case of error
-            response.setMessage("Error Initiating Bank Transfer: " + httpResponse.body());
-        }
+                log.info("Bulk Payout Request Successful: {}", httpResponse.body());
+            } else {
+                log.info("Bulk Payout Request FAILED: {}", httpResponse.body());
+                response.setStatus(false);  // Set failure status in case of error
+                response.setMessage("Error Initiating Bank Transfer: " + httpResponse.body());
+            }
+            return response;  // Return the bulk payout response
+        });
+    }
+
+    @Override
+    public DefaultKoraResponse<PayoutResponseDTO> getPayout(String reference) throws Exception {
+        return await(getPayoutAsync(reference));
+    }
+
+    @Override
+    public CompletableFuture<DefaultKoraResponse<PayoutResponseDTO>> getPayoutAsync(String reference) {
+        HttpRequest request = requestBuilder(BASE_URL + "transactions/" + reference, SECRET_KEY, REQUEST_TIMEOUT_MS)
+                .GET().build();
+
+        return sendAsync(request).thenApply(httpResponse ->
+                readLookup(httpResponse, new TypeReference<DefaultKoraResponse<PayoutResponseDTO>>() {}));
+    }
+
+    @Override
+    public DefaultKoraResponse<BulkPayoutResponseDTO> getBulkPayout(String batchReference) throws Exception {
+        return await(getBulkPayoutAsync(batchReference));
+    }
+
+    @Override
+    public CompletableFuture<DefaultKoraResponse<BulkPayoutResponseDTO>> getBulkPayoutAsync(String batchReference) {
+        HttpRequest request = requestBuilder(BASE_URL + "transactions/bulk/" + batchReference, SECRET_KEY, REQUEST_TIMEOUT_MS)
+                .GET().build();
 
-        return response;  // Return the bulk payout response
+        return sendAsync(request).thenApply(httpResponse ->
+                readLookup(httpResponse, new TypeReference<DefaultKoraResponse<BulkPayoutResponseDTO>>() {}));
     }
 
     // Helper method to generate the request body for a single payout
 
-    private Map<String, Object> generatePayoutRequestBody(BigDecimal amount, Employer employer, String bankCode, String accountNumber, String currency) {
+    private Map<String, Object> generatePayoutRequestBody(String reference, BigDecimal amount, Employer employer, String bankCode, String accountNumber, String currency) {
         // 044, 033, 058 - Allowed Bank Codes for Success
 
         HashMap<String, Object> requestBody = new HashMap<>();
-        requestBody.put("reference", generateRef() + "-" + employer.getLastName().toLowerCase());
+        // Callers fix the reference up front so a transfer that gets no answer can still be matched to its webhook
+        requestBody.put("reference", reference);
 
 
         // Create the 'destination' HashMap
@@ -457,11 +459,11 @@ public class KoraPayServiceImpl implements IKoraPayService {
         return requestBody;
     }
 
-    private Map<String, Object> generateBulkPayoutRequestBody(List<PayoutData> payoutDataList, Employer employer) {
+    private Map<String, Object> generateBulkPayoutRequestBody(String batchReference, List<PayoutData> payoutDataList, Employer employer) {
         HashMap<String, Object> requestBody = new HashMap<>();
 
-        // Set the batch reference and description
-        requestBody.put("batch_reference", generateRef());
+        // Set the batch reference and description; callers fix the reference so the batch can be looked up later
+        requestBody.put("batch_reference", batchReference);
         requestBody.put("description", "test bulk transfer");
         requestBody.put("merchant_bears_cost", true);  // Set as true to bear the cost, false otherwise
         requestBody.put("currency", "NGN");  // Set the currency, e.g., "NGN"
@@ -474,7 +476,8 @@ public class KoraPayServiceImpl implements IKoraPayService {
             Map<String, Object> payoutRequest = new HashMap<>();
 
             // Payout reference
-            payoutRequest.put("reference", generateRef());  // Ensure unique reference for each payout
+            // Payroll runs fix the reference up front so item webhooks can be matched to the run
+            payoutRequest.put("reference", payoutData.getReference() != null ? payoutData.getReference() : generateRef());
 
             // Payout amount
             payoutRequest.put("amount", payoutData.getAmount());
@@ -553,85 +556,92 @@ public class KoraPayServiceImpl implements IKoraPayService {
 
     @Override
     public DefaultKoraResponse<PaymentDataDTO> chargeCard(CardFundingRequestDTO payload, Employer employer) throws Exception {
-        DefaultKoraResponse<PaymentDataDTO> response = new DefaultKoraResponse<>();
+        return await(chargeCardAsync(payload, employer));
+    }
+
+    @Override
+    public CompletableFuture<DefaultKoraResponse<PaymentDataDTO>> chargeCardAsync(CardFundingRequestDTO payload, Employer employer) {
+        CompletableFuture<DefaultKoraResponse<PaymentDataDTO>> charge;
         try{
             Map<String, Object> requestBody = createCardFundingRequestBody(payload, employer);
 
-
             // Convert request body to JSON
             String requestBodyJson = jacksonObjectMapper.writeValueAsString(requestBody);
-            String url = BASE_URL + "charges/card";;
 
             Map<String, String> mainRequest = new HashMap<>();
             mainRequest.put("charge_data", encryptPayload(requestBodyJson));
 
-            String mainRequestJson = jacksonObjectMapper.writeValueAsString(mainRequest);
-
             // Build the request
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .header("Content-Type", "application/json")
-                    .header("Authorization", "Bearer " + SECRET_KEY)
-                    .POST(HttpRequest.BodyPublishers.ofString(mainRequestJson))
+            HttpRequest request = requestBuilder(BASE_URL + "charges/card", SECRET_KEY, REQUEST_TIMEOUT_MS)
+                    .POST(HttpRequest.BodyPublishers.ofString(toJson(mainRequest)))
                     .build();
 
-            // Send the request and get the response
-            HttpResponse<String> httpResponse = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            log.info(httpResponse.body());
+            // Send the request, then authorize or verify the charge depending on its status
+            charge = sendAsync(request).thenCompose(httpResponse -> {
+                log.info(httpResponse.body());
 
-            // Parse the response
-            if (httpResponse.statusCode() == 200) {
-                response = jacksonObjectMapper.readValue(httpResponse.body(),
+                if (httpResponse.statusCode() != 200) {
+                    DefaultKoraResponse<PaymentDataDTO> response = new DefaultKoraResponse<>();
+                    response.setStatus(false);
+                    response.setMessage("Card Funding Failed: " + httpResponse.body());
+                    log.error("Failed to initiate Card Funding: {}", httpResponse.body());
+                    return CompletableFuture.completedFuture(response);
+                }
+
+                DefaultKoraResponse<PaymentDataDTO> response = readResponse(httpResponse.body(),
                         new TypeReference<DefaultKoraResponse<PaymentDataDTO>>() {});
                 log.info("Card Funding initiated successfully for Employer with email {}", employer.getEmailAddress());
 
                 if(response.getData().getStatus().equals("processing")){
                     log.info("Response Received Success: {}", response);
                     if(response.getData().getAuth_model().equals("OTP")){
-                        authorizeTransactionWithOtp("12345", response.getData().getTransaction_reference());
+                        return authorizeTransactionWithOtp("12345", response.getData().getTransaction_reference())
+                                .thenApply(ignored -> response);
                     }
                 }else if(response.getData().getStatus().equals("success")){
-                    boolean isValid = verifyPayment(response.getData().getTransaction_reference());
                     log.info("Response Received FAILED: {}", response);
-                    if(isValid){
-                        log.info("Success on Funding Card");
-                        response.setStatus(true);
-                        response.setMessage("Account Credited Successfully");
-                    }
+                    return verifyPayment(response.getData().getTransaction_reference()).thenApply(isValid -> {
+                        if(isValid){
+                            log.info("Success on Funding Card");
+                            response.setStatus(true);
+                            response.setMessage("Account Credited Successfully");
+                        }
+                        return response;
+                    });
                 }
-            } else {
-                response.setStatus(false);
-                response.setMessage("Card Funding Failed: " + response);
-                log.error("Failed to initiate Card Funding: {}", response);
-            }
+                return CompletableFuture.completedFuture(response);
+            });
         }catch (Exception ex){
-            log.error(ex.getMessage());
-            response.setStatus(false);
-            response.setMessage("Card Funding Failed: " + ex.getMessage());
+            charge = CompletableFuture.failedFuture(ex);
         }
 
-        return response;
+        return charge.exceptionally(ex -> {
+            Throwable cause = unwrap(ex);
+            log.error(cause.getMessage());
+            DefaultKoraResponse<PaymentDataDTO> response = new DefaultKoraResponse<>();
+            response.setStatus(false);
+            response.setMessage("Card Funding Failed: " + cause.getMessage());
+            return response;
+        });
     }
 
-    private boolean verifyPayment(String paymentReference) throws Exception {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(BASE_URL + "/charges/" + paymentReference))
-                .header("Content-Type", "application/json")
-                .header("Authorization", "Bearer " + SECRET_KEY).GET().build();
-
-        // Send the request and get the response
-        HttpResponse<String> httpResponse = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        DefaultKoraResponse<VerifyPaymentDTO> response = jacksonObjectMapper.readValue(httpResponse.body(),
-                new TypeReference<DefaultKoraResponse<VerifyPaymentDTO>>() {});
-        if (httpResponse.statusCode() == 200) {
-            return response.getData().getStatus().equals("success");
-        } else {
-            log.error("Failed to verify payment: {}", response.getData());
-        }
-        return false;
+    private CompletableFuture<Boolean> verifyPayment(String paymentReference) {
+        HttpRequest request = requestBuilder(BASE_URL + "/charges/" + paymentReference, SECRET_KEY, REQUEST_TIMEOUT_MS)
+                .GET().build();
+
+        return sendAsync(request).thenApply(httpResponse -> {
+            DefaultKoraResponse<VerifyPaymentDTO> response = readResponse(httpResponse.body(),
+                    new TypeReference<DefaultKoraResponse<VerifyPaymentDTO>>() {});
+            if (httpResponse.statusCode() == 200) {
+                return response.getData().getStatus().equals("success");
+            } else {
+                log.error("Failed to verify payment: {}", response.getData());
+            }
+            return false;
+        });
     }
 
-    private void authorizeTransactionWithOtp(String otp, String transactionReference) throws Exception {
+    private CompletableFuture<Void> authorizeTransactionWithOtp(String otp, String transactionReference) {
 
         Map<String, Object> requestBody = new HashMap<>();
         Map<String, String> authorization = new HashMap<>();
@@ -640,22 +650,16 @@ public class KoraPayServiceImpl implements IKoraPayService {
         requestBody.put("transaction_reference", transactionReference);
         requestBody.put("authorization", authorization);
 
-        String requestBodyJson = jacksonObjectMapper.writeValueAsString(requestBody);
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(BASE_URL + "/charges/authorize"))
-                .header("Content-Type", "application/json")
-                .header("Authorization", "Bearer " + SECRET_KEY)
-                .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
+        HttpRequest request = requestBuilder(BASE_URL + "/charges/authorize", SECRET_KEY, REQUEST_TIMEOUT_MS)
+                .POST(HttpRequest.BodyPublishers.ofString(toJson(requestBody)))
                 .build();
 
-        // Send the request and get the response
-        HttpResponse<String> httpResponse = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-        // Parse the response
-        if (httpResponse.statusCode() == 200) {
-            log.info("Processed Card with OTP");
-        }
+        return sendAsync(request).thenAccept(httpResponse -> {
+            // Parse the response
+            if (httpResponse.statusCode() == 200) {
+                log.info("Processed Card with OTP");
+            }
+        });
     }
 
     private Map<String, Object> createCardFundingRequestBody(CardFundingRequestDTO requestDTO, Employer employer){
@@ -693,4 +697,68 @@ public class KoraPayServiceImpl implements IKoraPayService {
         return requestBody;
     }
 
-}
\ No newline at end of file
+
+    // ========== HTTP HELPERS =========
+
+    // Common headers and per-call timeout for every KoraPay request
+    private HttpRequest.Builder requestBuilder(String url, String key, long timeoutMs) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + key)
+                .timeout(Duration.ofMillis(timeoutMs));
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest request) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String toJson(Object body) {
+        try {
+            return jacksonObjectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    private <T> T readResponse(String body, TypeReference<T> type) {
+        try {
+            return jacksonObjectMapper.readValue(body, type);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    /*
+     * A lookup by reference: 200 carries the transaction, 404 means KoraPay never received it (data is left null).
+     * Anything else says nothing about the transaction, so it is thrown for the caller to try again later.
+     */
+    private <T> DefaultKoraResponse<T> readLookup(HttpResponse<String> httpResponse, TypeReference<DefaultKoraResponse<T>> type) {
+        if (httpResponse.statusCode() == 200)
+            return readResponse(httpResponse.body(), type);
+
+        if (httpResponse.statusCode() == 404) {
+            DefaultKoraResponse<T> response = new DefaultKoraResponse<>();
+            response.setStatus(false);
+            response.setMessage("Transaction not found");
+            return response;
+        }
+        throw new RuntimeException("Lookup failed with status " + httpResponse.statusCode() + ": " + httpResponse.body());
+    }
+
+    // Blocks the caller on an async call, rethrowing the original failure
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            throw cause instanceof RuntimeException runtimeException
+                    ? runtimeException : new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return (ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null
+                ? ex.getCause() : ex;
+    }
+}
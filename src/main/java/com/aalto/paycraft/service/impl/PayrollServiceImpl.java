@@ -1,31 +1,35 @@
 package com.aalto.paycraft.service.impl;
 
+import com.aalto.paycraft.config.TenantContextHolder;
 import com.aalto.paycraft.constants.PayCraftConstant;
 import com.aalto.paycraft.dto.*;
 import com.aalto.paycraft.entity.Company;
 import com.aalto.paycraft.entity.Employee;
 import com.aalto.paycraft.entity.Payroll;
+import com.aalto.paycraft.entity.PayrollRun;
+import com.aalto.paycraft.entity.PayrollRunItem;
 import com.aalto.paycraft.mapper.CompanyMapper;
 import com.aalto.paycraft.mapper.PayrollMapper;
+import com.aalto.paycraft.mapper.PayrollRunMapper;
 import com.aalto.paycraft.repository.CompanyRepository;
 import com.aalto.paycraft.repository.EmployeeRepository;
 import com.aalto.paycraft.repository.PayrollRepository;
+import com.aalto.paycraft.repository.PayrollRunItemRepository;
+import com.aalto.paycraft.repository.PayrollRunRepository;
 import com.aalto.paycraft.service.IPayrollService;
-import com.aalto.paycraft.service.JWTService;
 import com.aalto.paycraft.service.PayrollJobService;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.ExpiredJwtException;
-import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.support.CronTrigger;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
-import java.util.function.Function;
 
 import static com.aalto.paycraft.constants.PayCraftConstant.STATUS_400;
 
@@ -36,20 +40,13 @@ public class PayrollServiceImpl implements IPayrollService {
     private final PayrollRepository payrollRepository;
     private final CompanyRepository companyRepository;
     private final EmployeeRepository employeeRepository;
-    private final JWTService jwtService;
-    private final HttpServletRequest request;
     private final PayrollJobService payrollJobService;
+    private final PayrollRunRepository payrollRunRepository;
+    private final PayrollRunItemRepository payrollRunItemRepository;
 
-    // Gets the AccessToken from the Request Sent
-    private String ACCESS_TOKEN() {
-        return request.getHeader("Authorization").substring(7); // Removes "Bearer " prefix
-    }
-
-    // Get the ID of the company making the request
+    // Get the ID of the company making the request, resolved once by JWTSecurityFilter
     private UUID COMPANY_ID() {
-        verifyTokenExpiration(ACCESS_TOKEN());
-        Claims claims = jwtService.extractClaims(ACCESS_TOKEN(), Function.identity());
-        return UUID.fromString((String) claims.get("activeCompanyID"));
+        return TenantContextHolder.getContext().activeCompanyId();
     }
 
     // ====== CREATE ======
@@ -98,6 +95,7 @@ public class PayrollServiceImpl implements IPayrollService {
 
     // ====== ADD ======
     @Override
+    @Transactional
     public DefaultApiResponse<PayrollDTO> addEmployee(UUID payrollId, UUID employeeId) {
         DefaultApiResponse<PayrollDTO> response = new DefaultApiResponse<>();
 
@@ -105,15 +103,18 @@ public class PayrollServiceImpl implements IPayrollService {
         Employee employee = verifyAndFetchEmployeeById(employeeId);
 
         // Check if employee is already on payroll
-        if (payroll.getEmployees().contains(employee))
+        if (payrollRepository.countMembership(payrollId.toString(), employeeId.toString()) > 0)
             throw new RuntimeException("Employee with ID " + employee.getEmployeeId() + " already on payroll: " + payroll.getPayrollId());
 
-        payroll.getEmployees().add(employee); // Add employee to payroll
-        payrollRepository.save(payroll); // Save updated payroll
+        // Add employee to payroll and move the totals in the same transaction; the unique key stops a concurrent add
+        try {
+            payrollRepository.addEmployee(payrollId.toString(), employeeId.toString());
+        } catch (DataIntegrityViolationException e) {
+            throw new RuntimeException("Employee with ID " + employee.getEmployeeId() + " already on payroll: " + payroll.getPayrollId());
+        }
+        payrollRepository.adjustTotals(payrollId, employee.getSalaryAmount(), 1);
 
-        List<UUID> employees = payroll.getEmployees().stream()
-                .map(Employee::getEmployeeId)
-                .toList(); // Get updated employee list
+        List<UUID> employees = payrollRepository.findEmployeeIdsByPayrollId(payrollId); // Get updated employee list
 
         response.setStatusCode(PayCraftConstant.REQUEST_SUCCESS);
         response.setStatusMessage("Employee added to payroll");
@@ -128,35 +129,25 @@ public class PayrollServiceImpl implements IPayrollService {
 
     // ====== REMOVE ======
     @Override
+    @Transactional
     public DefaultApiResponse<PayrollDTO> removeEmployee(UUID payrollId, UUID employeeId) {
         DefaultApiResponse<PayrollDTO> response = new DefaultApiResponse<>();
 
         Payroll payroll = verifyAndFetchPayrollById(payrollId);
         Employee employee = verifyAndFetchEmployeeById(employeeId);
 
-        // Fetch the employee directly from payroll's employees list
-        Optional<Employee> employeeToRemove = payroll.getEmployees().stream()
-                .filter(emp -> emp.getEmployeeId().equals(employeeId))
-                .findFirst();
-
-        if (employeeToRemove.isEmpty()) {
+        // Only adjust the totals if a membership row was actually removed
+        if (payrollRepository.removeEmployee(payrollId.toString(), employeeId.toString()) == 0)
             throw new RuntimeException("Employee not on payroll: " + payroll.getPayrollId());
-        }
 
-//        // Check if employee is not on payroll before removal
-//        if (!payroll.getEmployees().remove(employee))
-//            throw new RuntimeException("Employee not on payroll: " + payroll.getPayrollId());
-        payroll.getEmployees().remove(employeeToRemove.get());
-        payrollRepository.save(payroll); // Save updated payroll
+        payrollRepository.adjustTotals(payrollId, employee.getSalaryAmount().negate(), -1);
 
         response.setStatusCode(PayCraftConstant.REQUEST_SUCCESS);
         response.setStatusMessage("Employee removed from payroll");
         response.setData(
                 PayrollDTO.builder()
                         .payrollId(payroll.getPayrollId())
-                        .employees(payroll.getEmployees().stream()
-                                .map(Employee::getEmployeeId)
-                                .toList())
+                        .employees(payrollRepository.findEmployeeIdsByPayrollId(payrollId))
                         .build()
         );
         return response;
@@ -200,11 +191,8 @@ public class PayrollServiceImpl implements IPayrollService {
         Company company = verifyAndFetchCompanyById(COMPANY_ID());
         Payroll payroll = verifyAndFetchPayrollById(payrollId);
 
-        payrollRepository.delete(payroll); // Delete the payroll
-
-        // Remove payroll from scheduled jobs if it's automatic
-        if (payroll.getCronExpression() != null && payroll.getAutomatic() && !payroll.getCronExpression().isEmpty())
-            payrollJobService.cancelScheduledPayroll(payroll.getPayrollId());
+        // The schedule lives on the row, so deleting it also stops automatic runs
+        payrollRepository.delete(payroll);
 
         response.setStatusMessage("Payroll deleted successfully");
         response.setStatusCode(PayCraftConstant.REQUEST_SUCCESS);
@@ -274,7 +262,8 @@ public class PayrollServiceImpl implements IPayrollService {
 
         DefaultApiResponse<?> response1 = payrollJobService.processPayroll(payroll);
 
-        if(!response1.getStatusMessage().equals("Bulk Payout request completed")){
+        // The bulk payout is queued and settles asynchronously, so success here means it was accepted
+        if(!PayCraftConstant.REQUEST_SUCCESS.equals(response1.getStatusCode())){
             response.setStatusCode(STATUS_400);
             response.setStatusMessage(response1.getStatusMessage());
             return response;
@@ -305,6 +294,37 @@ public class PayrollServiceImpl implements IPayrollService {
         return response;
     }
 
+    // ====== RUN HISTORY ======
+    // Served from the run snapshots; live Employee rows are not read
+    @Override
+    public DefaultApiResponse<PayrollRunPageDTO<PayrollRunDTO>> getPayrollRuns(UUID payrollId, int pageSize, int pageNumber) {
+        DefaultApiResponse<PayrollRunPageDTO<PayrollRunDTO>> response = new DefaultApiResponse<>();
+
+        Page<PayrollRun> runs = payrollRunRepository.findAllByPayrollIdAndCompanyIdOrderByStartedAtDesc(
+                payrollId, COMPANY_ID(), PageRequest.of(pageNumber, pageSize));
+
+        response.setStatusCode(PayCraftConstant.REQUEST_SUCCESS);
+        response.setStatusMessage("Payroll runs");
+        response.setData(PayrollRunMapper.toPageDTO(runs, PayrollRunMapper::toDTO));
+        return response;
+    }
+
+    @Override
+    public DefaultApiResponse<PayrollRunPageDTO<PayrollRunItemDTO>> getPayrollRunItems(UUID runId, int pageSize, int pageNumber) {
+        DefaultApiResponse<PayrollRunPageDTO<PayrollRunItemDTO>> response = new DefaultApiResponse<>();
+
+        // Only runs of the requesting company
+        PayrollRun run = payrollRunRepository.findByRunIdAndCompanyId(runId, COMPANY_ID()).orElseThrow(
+                () -> new RuntimeException("Payroll run does not exist: " + runId));
+        Page<PayrollRunItem> items = payrollRunItemRepository.findAllByRunIdOrderById(
+                run.getRunId(), PageRequest.of(pageNumber, pageSize));
+
+        response.setStatusCode(PayCraftConstant.REQUEST_SUCCESS);
+        response.setStatusMessage("Payroll run items");
+        response.setData(PayrollRunMapper.toPageDTO(items, PayrollRunMapper::toDTO));
+        return response;
+    }
+
     // Fetch company by ID and verify existence
     private Company verifyAndFetchCompanyById(UUID companyId) {
         return companyRepository.findById(companyId).orElseThrow(
@@ -321,7 +341,8 @@ public class PayrollServiceImpl implements IPayrollService {
 
     // Fetch employee by ID and verify existence
     private Employee verifyAndFetchEmployeeById(UUID employeeId) {
-        return employeeRepository.findByEmployeeId(employeeId).orElseThrow(
+        // Locked, so the salary read here cannot change before the payroll totals are moved
+        return employeeRepository.findByEmployeeIdForUpdate(employeeId).orElseThrow(
                 () -> new RuntimeException("Employee ID does not exist: " + employeeId)
         );
     }
@@ -335,14 +356,6 @@ public class PayrollServiceImpl implements IPayrollService {
         return payroll;
     }
 
-    // Verify token expiration
-    private void verifyTokenExpiration(String token) {
-        if (jwtService.isTokenExpired(token)) {
-            log.warn("Token has expired");
-            throw new ExpiredJwtException(null, null, "Access Token has expired");
-        }
-    }
-
     // Verify if the provided cron expression is valid
     private void verifyCronExpression(String cronExpression) {
         try {
@@ -1,12 +1,18 @@
 package com.aalto.paycraft.service.impl;
 
+import com.aalto.paycraft.config.TenantContext;
 import com.aalto.paycraft.dto.CardFundingRequestDTO;
 import com.aalto.paycraft.dto.UssdDTO;
 import com.aalto.paycraft.entity.*;
 import com.aalto.paycraft.repository.*;
+import com.aalto.paycraft.repository.CardRepository.CardSummary;
 import com.aalto.paycraft.service.IPayrollService;
 import com.aalto.paycraft.service.IUssdService;
 import com.aalto.paycraft.service.IVirtualAccountService;
+import com.aalto.paycraft.service.UssdJobService;
+import com.aalto.paycraft.service.UssdSessionStore;
+import com.aalto.paycraft.service.UssdSessionStore.UssdProfile;
+import com.aalto.paycraft.service.UssdSessionStore.UssdSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -14,6 +20,8 @@ import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Service
@@ -26,13 +34,51 @@ public class UssdServiceImpl implements IUssdService {
     private final CardRepository cardRepository;
     private final IVirtualAccountService virtualAccountService;
     private final IPayrollService payrollService;
-    private final Integer[] line = {1};
-    private final Integer[] amount = {0};
+    private final UssdSessionStore sessionStore;
+    private final UssdJobService ussdJobService;
+
+    // Menu text that does not depend on the caller
+    private static final String MAIN_MENU = "CON Choose an option \n"
+            + "1. Fund Wallet with Card\n"
+            + "2. Account Details \n"
+            + "3. Run Payroll \n"
+            + "4. Payment History\n"
+            + "5. Request Status";
+    private static final String ENTER_AMOUNT = "CON Enter Amount\n";
+    private static final String CARD_PROMPT = "CON Enter first 6 digits of card to fund account\n";
+    private static final String PAYROLL_PROMPT = "CON List of runnable payrolls. Enter payroll name in full to run\n";
+    private static final String INVALID_PHONE_NUMBER = "END Invalid phone number\n";
+    private static final String INVALID_INPUT = "END Invalid Input";
+    private static final String NO_VIRTUAL_ACCOUNT = "END No virtual account found\n";
+    private static final String JOBS_BUSY = "END Service busy, please try again shortly\n";
+
+    // One step of the menu; groups of the matched pattern carry the user's input
+    @FunctionalInterface
+    private interface UssdHandler {
+        String handle(Matcher input, UssdDTO ussdDTO, UssdSession session);
+    }
+
+    private record UssdRoute(Pattern pattern, UssdHandler handler) {
+    }
+
+    /*
+     * The menu, keyed on the full text the gateway sends ("1*500*123456" after three steps).
+     * Patterns are compiled once and the first full match wins.
+     */
+    private final List<UssdRoute> routes = List.of(
+            new UssdRoute(Pattern.compile(""), (input, ussdDTO, session) -> MAIN_MENU),
+            new UssdRoute(Pattern.compile("1"), (input, ussdDTO, session) -> ENTER_AMOUNT),
+            new UssdRoute(Pattern.compile("1\\*(\\w+)"), this::storeAmountAndListCards),
+            new UssdRoute(Pattern.compile("1\\*.*\\*([^*]*)"), this::fundWithCard),
+            new UssdRoute(Pattern.compile("2"), (input, ussdDTO, session) -> getAccountDetails(session.getProfile())),
+            new UssdRoute(Pattern.compile("3"), (input, ussdDTO, session) -> getPayrollsByCompany(session.getProfile())),
+            new UssdRoute(Pattern.compile("3\\*\\s*(\\w+)"), (input, ussdDTO, session) -> findAndRunManualPayroll(input.group(1), ussdDTO.getPhoneNumber(), session.getProfile())),
+            new UssdRoute(Pattern.compile("4"), (input, ussdDTO, session) ->
+                    "END Request Successfully!\nPayment history will be sent to +" + ussdDTO.getPhoneNumber() + " via SMS\n"),
+            new UssdRoute(Pattern.compile("5"), (input, ussdDTO, session) -> getLatestJobStatus(ussdDTO.getPhoneNumber())));
 
     @Override
     public String ussdCallback(UssdDTO ussdDTO) {
-        String response = "";
-
         ussdDTO.setText(ussdDTO.getText().trim());
         log.info("{}", ussdDTO.getPhoneNumber());
         log.info("{}", ussdDTO.getText());
@@ -40,198 +86,160 @@ public class UssdServiceImpl implements IUssdService {
         // Remove '+' from phoneNumber
         if(ussdDTO.getPhoneNumber().contains("+"))  ussdDTO.setPhoneNumber(ussdDTO.getPhoneNumber().replace("+",""));
 
-        // Verify PhoneNumber
-        if(!verifyPhoneNumber(ussdDTO.getPhoneNumber())){
-            response = "END Invalid phone number\n";
-            return response;
-        }
+        UssdSession session = sessionStore.session(ussdDTO.getSessionId(), ussdDTO.getPhoneNumber());
+        String response = handleStep(ussdDTO, session);
 
-        // Store amount
-        if (ussdDTO.getText().matches("^1\\*\\w+")) {
-            String extractedPart = ussdDTO.getText().substring(2); // Extract the part after "1*"
-
-            try {
-                amount[0] = Integer.parseInt(extractedPart); // Parse the extracted part as an integer
-                log.info("===== amount: {} =====", amount[0]);
-                return getListOfCards(ussdDTO.getPhoneNumber()); // Return the list of cards
-            } catch (Exception exception) {
-                log.error("Invalid input: could not parse amount from {}", extractedPart);
-                return "END Invalid Input";
-            }
-        }
+        // The gateway closes the session on END, so its state can go too
+        if (response.startsWith("END"))
+            sessionStore.end(ussdDTO.getSessionId(), ussdDTO.getPhoneNumber());
+        return response;
+    }
 
-        if (ussdDTO.getText().matches("^1\\*.*\\*.*")) {
-            String cardPart = ussdDTO.getText().substring(ussdDTO.getText().lastIndexOf('*') + 1); // Extract the part after the second "*"
-            log.info("Extracted card part: {}", cardPart);
-            log.info("amount: {}", amount[0]);
-            return findAndFundWithCard(cardPart, ussdDTO.getPhoneNumber()); // Call findCard with extracted part
+    private String handleStep(UssdDTO ussdDTO, UssdSession session) {
+        // Verify PhoneNumber; resolved once per session and reused by later steps
+        if (session.getProfile() == null) {
+            Optional<UssdProfile> profile = loadProfile(ussdDTO.getPhoneNumber());
+            if (profile.isEmpty())
+                return INVALID_PHONE_NUMBER;
+            session.setProfile(profile.get());
         }
 
-
-        if (ussdDTO.getText().matches("^3\\*\\s*\\w+")) {
-            String extractedPart = ussdDTO.getText().substring(2); // Extract the part after "1*"
-            log.info("Extracted payroll ID: {}", extractedPart);
-            return findAndRunManualPayroll(extractedPart);
+        for (UssdRoute route : routes) {
+            Matcher input = route.pattern().matcher(ussdDTO.getText());
+            if (input.matches())
+                return route.handler().handle(input, ussdDTO, session);
         }
+        return INVALID_INPUT;
+    }
 
+    private Optional<UssdProfile> loadProfile(String phoneNumber) {
+        return employerRepository.findWithVirtualAccountByPhoneNumber(phoneNumber).map(employer -> {
+            VirtualAccount account = employer.getVirtualAccount();
+            Company company = companyRepository.findByCompanyPhoneNumber(phoneNumber).orElse(null);
+            return new UssdProfile(
+                    employer.getEmployerId(),
+                    account == null ? null : account.getAccountId(),
+                    account == null ? null : account.getAccountNumber(),
+                    account == null ? null : account.getBankName(),
+                    account == null ? null : account.getBankCode(),
+                    company == null ? null : company.getCompanyId());
+        });
+    }
 
-        if (ussdDTO.getText().isEmpty()) {
-            response = "CON Choose an option \n";
-            response += "1. Fund Wallet with Card\n";
-            response += "2. Account Details \n"; //Done
-            response += "3. Run Payroll \n";
-            response += "4. Payment History"; //Done
-        } else if(ussdDTO.getText().equals("1")) {
-            response = "CON Enter Amount\n";
-            // List of Cards
+    // Store amount
+    private String storeAmountAndListCards(Matcher input, UssdDTO ussdDTO, UssdSession session) {
+        String extractedPart = input.group(1); // The part after "1*"
+        try {
+            session.setAmount(BigDecimal.valueOf(Integer.parseInt(extractedPart))); // Parse the extracted part as an integer
+            log.info("===== amount: {} =====", session.getAmount());
+            return getListOfCards(session.getProfile()); // Return the list of cards
+        } catch (Exception exception) {
+            log.error("Invalid input: could not parse amount from {}", extractedPart);
+            return INVALID_INPUT;
         }
-        else if (ussdDTO.getText().equals("2")){
-            // Account Details
-            response = getAccountDetails(ussdDTO.getPhoneNumber());
-        }
-        else if (ussdDTO.getText().equals("3")) {
-            //Payrolls
-            response = getPayrollsByCompanyNumber(ussdDTO.getPhoneNumber());
-        }
-        else if (ussdDTO.getText().equals("4")) {
-            response = "END Request Successfully!\n";
-            response += "Payment history will be sent to +" + ussdDTO.getPhoneNumber() + " via SMS\n";
-        }
-        return response;
     }
 
-    private String findAndFundWithCard(String extracted, String phoneNumber) {
-        if (extracted.length() != 6) return "END Invalid Input (Card length too short)\n";
-
-        Optional<Employer> employerOptional = employerRepository.findByPhoneNumber(phoneNumber);
-        if (employerOptional.isPresent()) {
-            Employer employer = employerOptional.get();
-            Optional<VirtualAccount> accountOptional = virtualAccountRepository.findByEmployer_EmployerId(employer.getEmployerId());
-            if (accountOptional.isPresent()) {
-                VirtualAccount account = accountOptional.get();
-                List<Card> cardsList = cardRepository.findAllByAccount_AccountId(account.getAccountId());
-
-                if (cardsList.isEmpty()) return "END No Cards found on this account\n";
-
-                CardFundingRequestDTO cardFundingRequestDTO = null;
-                for (Card card : cardsList) {
-                    if (card.getCardNumber().startsWith(extracted)) {
-                        cardFundingRequestDTO = getCardFundingRequestDTO(card);
-                        break;
-                    }
-                }
-
-                if (cardFundingRequestDTO != null) {
-                    try {
-                        virtualAccountService.processCardFunding(cardFundingRequestDTO);
-                        return "END Successfully funded account\nAn SMS will be sent shortly to confirm\n";
-                    } catch (Exception e) {
-                        return "END Error occurred when funding account with " + cardFundingRequestDTO.getCardNumber() + "\n";
-                    }
-                } else {
-                    return "END You must have entered the wrong first 6 digits\n";
-                }
-            } else {
-                return "END No virtual account found\n";
-            }
-        } else {
-            return "END Profile does not exist\n";
-        }
+    private String fundWithCard(Matcher input, UssdDTO ussdDTO, UssdSession session) {
+        String cardPart = input.group(1); // The part after the last "*"
+        log.info("Extracted card part: {}", cardPart);
+        log.info("amount: {}", session.getAmount());
+        if (session.getAmount() == null) return "END Session expired, please start again\n";
+        return findAndFundWithCard(cardPart, ussdDTO.getPhoneNumber(), session.getProfile(), session.getAmount());
     }
 
+    private String findAndFundWithCard(String extracted, String phoneNumber, UssdProfile profile, BigDecimal amount) {
+        if (extracted.length() != 6) return "END Invalid Input (Card length too short)\n";
+        if (profile.accountId() == null) return NO_VIRTUAL_ACCOUNT;
+
+        // Indexed on (account, BIN), so only the chosen card is loaded
+        Optional<Card> card = cardRepository.findFirstByAccount_AccountIdAndCardBinOrderByCardId(profile.accountId(), extracted);
+        if (card.isEmpty())
+            return "END You must have entered the wrong first 6 digits\n";
+
+        // USSD has no access token, so the funding runs as the employer who owns the phone number.
+        // Card charges wait on the provider, so they run as a job and the session ends now
+        CardFundingRequestDTO fundingRequest = getCardFundingRequestDTO(card.get(), amount);
+        return ussdJobService.submit("Card funding", phoneNumber, TenantContext.of(profile.employerId(), null),
+                        () -> virtualAccountService.processCardFunding(fundingRequest))
+                .map(job -> "END Funding request received (Ref: " + job.getJobId() + ")\n"
+                        + "You will be notified once it completes. Dial again and choose 5 for status\n")
+                .orElse(JOBS_BUSY);
+    }
 
-    private CardFundingRequestDTO getCardFundingRequestDTO(Card card) {
+    private CardFundingRequestDTO getCardFundingRequestDTO(Card card, BigDecimal amount) {
         CardFundingRequestDTO cardFundingRequestDTO = new CardFundingRequestDTO();
         cardFundingRequestDTO.setCardNumber(card.getCardNumber());
         cardFundingRequestDTO.setCardPin(card.getCardPin());
         cardFundingRequestDTO.setCvv(card.getCvv());
-        cardFundingRequestDTO.setAmount(BigDecimal.valueOf(amount[0]));
+        cardFundingRequestDTO.setAmount(amount);
         cardFundingRequestDTO.setExpiryYear(card.getExpiryYear());
         cardFundingRequestDTO.setExpiryMonth(card.getExpiryMonth());
         return cardFundingRequestDTO;
     }
 
-    private boolean verifyPhoneNumber(String phoneNumber){
-        return employerRepository.existsByPhoneNumber(phoneNumber);
-    }
+    private String getAccountDetails(UssdProfile profile){
+        if (profile.accountId() == null)
+            return NO_VIRTUAL_ACCOUNT;
 
-    private String getAccountDetails(String phoneNumber){
-        String response;
-
-        Optional<Employer> employerOptional = employerRepository.findByPhoneNumber(phoneNumber);
-        if(employerOptional.isPresent()) {
-            Employer employer = employerOptional.get();
-            Optional<VirtualAccount> accountOptional = virtualAccountRepository.findByEmployer_EmployerId(employer.getEmployerId());
-            if (accountOptional.isPresent()){
-                VirtualAccount account = accountOptional.get();
-                response = "END Account Number: "+ account.getAccountNumber() + "\n";
-                response += "Bank Name: " + account.getBankName() + "(" + account.getBankCode() + ")" + "\n";
-                response += "Account Balance: "+ account.getBalance();
-                return response;
-            }
-            else
-                return "END No virtual account found\n";
-        }
-        else
-            return "END Profile does not exist\n";
+        // The balance is the one field that changes between steps, so it is read fresh
+        BigDecimal balance = virtualAccountRepository.findBalanceByAccountId(profile.accountId()).orElse(BigDecimal.ZERO);
+        return "END Account Number: " + profile.accountNumber() + "\n"
+                + "Bank Name: " + profile.bankName() + "(" + profile.bankCode() + ")" + "\n"
+                + "Account Balance: " + balance;
     }
 
-    private String getListOfCards(String phoneNumber){
-        final String[] response = {"CON Enter first 6 digits of card to fund account\n"};
-
-        Optional<Employer> employerOptional = employerRepository.findByPhoneNumber(phoneNumber);
-        if(employerOptional.isPresent()) {
-            Employer employer = employerOptional.get();
-            Optional<VirtualAccount> accountOptional = virtualAccountRepository.findByEmployer_EmployerId(employer.getEmployerId());
-            if (accountOptional.isPresent())
-            {
-                VirtualAccount account = accountOptional.get();
-                List<Card> cards = cardRepository.findAllByAccount_AccountId(account.getAccountId());
-                if(!cards.isEmpty()){
-                    cards.forEach((card) -> {
-                        response[0] +=  line[0] + ". "+ card.getCardNumber() +"\n";
-                        line[0]++;
-                    });
-                    line[0] = 1;
-                    return response[0];
-                }
-                else
-                    return "END No cards found on the account\n";
-            }
-            else
-                return "END No virtual account found\n";
-        }
-        else
-            return "END Profile does not exist\n";
+    private String getListOfCards(UssdProfile profile){
+        if (profile.accountId() == null)
+            return NO_VIRTUAL_ACCOUNT;
+
+        List<CardSummary> cards = cardRepository.findSummariesByAccount_AccountIdOrderByCardId(profile.accountId());
+        if (cards.isEmpty())
+            return "END No cards found on the account\n";
+
+        StringBuilder response = new StringBuilder(CARD_PROMPT);
+        int line = 1;
+        for (CardSummary card : cards)
+            response.append(line++).append(". ").append(card.getMaskedCardNumber()).append("\n");
+        return response.toString();
     }
 
-    private String findAndRunManualPayroll(String payrollName){
-        Optional<Payroll> payrollOptional = payrollRepository.findOneWhereAutomaticIsFalseByPayrollName(payrollName);
+    private String findAndRunManualPayroll(String payrollName, String phoneNumber, UssdProfile profile){
+        Optional<Payroll> payrollOptional = payrollRepository.findOneWhereAutomaticIsFalseByPayrollName(payrollName)
+                // Only payrolls of the company registered to this phone number
+                .filter(payroll -> payroll.getCompany().getCompanyId().equals(profile.companyId()));
         if(payrollOptional.isPresent()){
             Payroll payroll = payrollOptional.get();
-            payrollService.runPayroll(payroll.getPayrollId());
-            return "END Payroll manual ran successfully\n" + "An SMS will be sent shortly to confirm";
+            TenantContext owner = TenantContext.of(
+                    payroll.getCompany().getEmployer().getEmployerId(), payroll.getCompany().getCompanyId());
+            return ussdJobService.submit("Payroll run " + payroll.getPayrollName(), phoneNumber, owner,
+                            () -> payrollService.runPayroll(payroll.getPayrollId()))
+                    .map(job -> "END Payroll run started (Ref: " + job.getJobId() + ")\n"
+                            + "You will be notified once it completes. Dial again and choose 5 for status\n")
+                    .orElse(JOBS_BUSY);
         }
         return "END Invalid payroll name";
     }
 
-    private String getPayrollsByCompanyNumber(String phoneNumber){
-        final String[] response = {"CON List of runnable payrolls. Enter payroll name in full to run\n"};
-
-        Optional<Company> companyOptional = companyRepository.findByCompanyPhoneNumber(phoneNumber);
-        if(companyOptional.isPresent()) {
-            Company company = companyOptional.get();
-            List<Payroll> payrollList = payrollRepository.findAllWhereAutomaticIsFalseByCompanyId(company.getCompanyId());
-            if (!payrollList.isEmpty()){
-                payrollList.forEach((payroll) -> {
-                    response[0] += line[0] + ". " + payroll.getPayrollName() + "\n";
-                    line[0]++;
-                });
-                line[0] = 1;
-                return response[0];
-            }
+    private String getLatestJobStatus(String phoneNumber){
+        return ussdJobService.findLatest(phoneNumber)
+                .map(job -> "END " + job.getDescription() + " (Ref: " + job.getJobId() + ")\n"
+                        + "Status: " + job.getStatus() + "\n"
+                        + (job.getMessage() != null ? job.getMessage() + "\n" : ""))
+                .orElse("END No recent requests\n");
+    }
+
+    private String getPayrollsByCompany(UssdProfile profile){
+        if (profile.companyId() == null)
+            return "END No Company found with this phone number\n";
+
+        List<Payroll> payrollList = payrollRepository.findAllWhereAutomaticIsFalseByCompanyId(profile.companyId());
+        if (payrollList.isEmpty())
             return "END No manual payroll found\n";
-        }
-        return "END No Company found with this phone number " + phoneNumber + "\n";
+
+        StringBuilder response = new StringBuilder(PAYROLL_PROMPT);
+        int line = 1;
+        for (Payroll payroll : payrollList)
+            response.append(line++).append(". ").append(payroll.getPayrollName()).append("\n");
+        return response.toString();
     }
 }
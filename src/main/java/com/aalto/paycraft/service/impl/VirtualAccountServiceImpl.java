@@ -1,17 +1,18 @@
 package com.aalto.paycraft.service.impl;
 
+import com.aalto.paycraft.config.TenantContextHolder;
 import com.aalto.paycraft.dto.*;
 import com.aalto.paycraft.dto.enums.Currency;
 import com.aalto.paycraft.entity.*;
 import com.aalto.paycraft.repository.*;
+import com.aalto.paycraft.service.IKoraPayAsyncService;
 import com.aalto.paycraft.service.IKoraPayService;
 import com.aalto.paycraft.service.IVirtualAccountService;
-import com.aalto.paycraft.service.JWTService;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.ExpiredJwtException;
-import jakarta.servlet.http.HttpServletRequest;
+import com.aalto.paycraft.service.LedgerService;
+import com.aalto.paycraft.service.WebhookCompletionRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -23,8 +24,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
 import static com.aalto.paycraft.constants.PayCraftConstant.REQUEST_SUCCESS;
 import static com.aalto.paycraft.constants.PayCraftConstant.STATUS_400;
@@ -35,23 +36,21 @@ import static com.aalto.paycraft.constants.PayCraftConstant.STATUS_400;
 public class VirtualAccountServiceImpl implements IVirtualAccountService {
     private final VirtualAccountRepository virtualAccountRepository;
     private final CardRepository cardRepository;
-    private final WebhookDataRepository webhookDataRepository;
     private final PaymentRepository paymentRepository;
     private final IKoraPayService koraPayService;
+    private final IKoraPayAsyncService koraPayAsyncService;
+    private final WebhookCompletionRegistry webhookCompletionRegistry;
+    private final LedgerService ledgerService;
     private final EmployerRepository employerRepository;
-    private final JWTService jwtService;
-    private final HttpServletRequest request;
 
-    // Extract the AccessToken from the incoming request
-    private String EMPLOYER_ACCESS_TOKEN() {
-        return request.getHeader("Authorization").substring(7);  // Remove "Bearer " prefix
+    // Employer the current request (or scheduled job) is acting for, resolved once by JWTSecurityFilter
+    private UUID EMPLOYER_ID() {
+        return TenantContextHolder.getContext().employerId();
     }
 
-    // Get Employer details using the token in the request
+    // Loads the employer entity; only needed where the provider call takes the full employer
     private Employer EMPLOYER() {
-        verifyTokenExpiration(EMPLOYER_ACCESS_TOKEN());  // Check token validity
-        Claims claims = jwtService.extractClaims(EMPLOYER_ACCESS_TOKEN(), Function.identity());
-        UUID employerId = UUID.fromString((String) claims.get("userID"));
+        UUID employerId = EMPLOYER_ID();
 
         // Fetch employer details from the repository
         Optional<Employer> optionalEmployer = employerRepository.findByEmployerId(employerId);
@@ -63,14 +62,6 @@ public class VirtualAccountServiceImpl implements IVirtualAccountService {
         return new Employer();  // Return empty employer object as fallback
     }
 
-    // Check if the token has expired and throw an exception if so
-    private void verifyTokenExpiration(String token) {
-        if (jwtService.isTokenExpired(token)) {
-            log.warn("Token has expired");
-            throw new ExpiredJwtException(null, null, "Access Token has expired");
-        }
-    }
-
     @Override
     public UUID createVirtualAccount(Employer employer) {
         DefaultApiResponse<VirtualAccountDTO> response = new DefaultApiResponse<>();
@@ -137,7 +128,7 @@ public class VirtualAccountServiceImpl implements IVirtualAccountService {
         try {
             // Retrieve virtual account associated with employer
             Optional<VirtualAccount> optionalVirtualAccount =
-                    virtualAccountRepository.findByEmployer_EmployerId(EMPLOYER().getEmployerId());
+                    virtualAccountRepository.findByEmployer_EmployerId(EMPLOYER_ID());
 
             if (optionalVirtualAccount.isPresent()) {
                 VirtualAccount virtualAccount = optionalVirtualAccount.get();
@@ -151,14 +142,14 @@ public class VirtualAccountServiceImpl implements IVirtualAccountService {
                         .accountStatus(virtualAccount.getAccountStatus())
                         .balance(virtualAccount.getBalance())
                         .currency(virtualAccount.getCurrency())
-                        .employerId(String.valueOf(EMPLOYER().getEmployerId()))
+                        .employerId(String.valueOf(EMPLOYER_ID()))
                         .build();
 
                 response.setStatusCode(REQUEST_SUCCESS);
                 response.setStatusMessage("Virtual bank account retrieved successfully");
                 response.setData(virtualAccountDTO);
             } else {
-                log.warn("No virtual account found for employer: {}", EMPLOYER().getEmployerId());
+                log.warn("No virtual account found for employer: {}", EMPLOYER_ID());
                 response.setStatusCode(STATUS_400);
                 response.setStatusMessage("No virtual account found");
             }
@@ -171,63 +162,65 @@ public class VirtualAccountServiceImpl implements IVirtualAccountService {
     }
 
     @Override
-    public DefaultApiResponse<VirtualAccountTransactionDTO> getTransactionsOfVba(
+    public CompletableFuture<DefaultApiResponse<VirtualAccountTransactionDTO>> getTransactionsOfVba(
             String startDate, String endDate, Integer page, Integer limit) {
-        DefaultApiResponse<VirtualAccountTransactionDTO> response = new DefaultApiResponse<>();
+        // Resolve the employer on the request thread; the provider call completes on the KoraPay executor
+        Employer employer = EMPLOYER();
 
-        try {
-            // Retrieve virtual account linked to employer
-            Optional<VirtualAccount> optionalVirtualAccount =
-                    virtualAccountRepository.findByEmployer_EmployerId(EMPLOYER().getEmployerId());
-
-            if (optionalVirtualAccount.isPresent()) {
-                VirtualAccount virtualAccount = optionalVirtualAccount.get();
+        // Retrieve virtual account linked to employer
+        Optional<VirtualAccount> optionalVirtualAccount =
+                virtualAccountRepository.findByEmployer_EmployerId(employer.getEmployerId());
+
+        if (optionalVirtualAccount.isEmpty())
+            return CompletableFuture.completedFuture(new DefaultApiResponse<>());
+
+        VirtualAccount virtualAccount = optionalVirtualAccount.get();
+
+        // Fetch payments from external KoraPay service
+        return koraPayAsyncService.getTransactionOfVBAAsync(
+                virtualAccount.getAccountNumber(), employer, startDate, endDate, page, limit
+        ).thenApply(responseBody -> {
+            DefaultApiResponse<VirtualAccountTransactionDTO> response = new DefaultApiResponse<>();
+
+            if (responseBody.getMessage().equals("Virtual bank account transactions retrieved successfully")) {
+                VBATransactionDTO data = responseBody.getData();
+                List<VirtualAccountTransactionDTO.TransactionDTO> transactions = new ArrayList<>();
+
+                // Loop through and map the transaction details
+                // Only the ones made directly to the Virtual Account Number
+                for (VBATransactionDTO.TransactionDTO transaction : data.getTransactions()) {
+                    transactions.add(VirtualAccountTransactionDTO.TransactionDTO.builder()
+                            .payerAccountNumber(transaction.getPayer_bank_account().getAccount_number())
+                            .payerAccountName(transaction.getPayer_bank_account().getAccount_name())
+                            .payerBankName(transaction.getPayer_bank_account().getBankName())
+                            .reference(transaction.getReference())
+                            .description(transaction.getDescription())
+                            .status(transaction.getStatus())
+                            .amount(String.valueOf(transaction.getAmount()))
+                            .fee(String.valueOf(transaction.getFee()))
+                            .currency(transaction.getCurrency())
+                            .build());
+                }
 
-                // Fetch payments from external KoraPay service
-                DefaultKoraResponse<VBATransactionDTO> responseBody = koraPayService.getTransactionOfVBA(
-                        virtualAccount.getAccountNumber(), EMPLOYER(), startDate, endDate, page, limit);
-
-                if (responseBody.getMessage().equals("Virtual bank account transactions retrieved successfully")) {
-                    VBATransactionDTO data = responseBody.getData();
-                    List<VirtualAccountTransactionDTO.TransactionDTO> transactions = new ArrayList<>();
-
-                    // Loop through and map the transaction details
-                    // Only the ones made directly to the Virtual Account Number
-                    for (VBATransactionDTO.TransactionDTO transaction : data.getTransactions()) {
-                        transactions.add(VirtualAccountTransactionDTO.TransactionDTO.builder()
-                                .payerAccountNumber(transaction.getPayer_bank_account().getAccount_number())
-                                .payerAccountName(transaction.getPayer_bank_account().getAccount_name())
-                                .payerBankName(transaction.getPayer_bank_account().getBankName())
-                                .reference(transaction.getReference())
-                                .description(transaction.getDescription())
-                                .status(transaction.getStatus())
-                                .amount(String.valueOf(transaction.getAmount()))
-                                .fee(String.valueOf(transaction.getFee()))
-                                .currency(transaction.getCurrency())
-                                .build());
-                    }
+                // Build response DTO with payments
+                VirtualAccountTransactionDTO transactionDTO = VirtualAccountTransactionDTO.builder()
+                        .totalPages(data.getPagination().getTotal_pages())
+                        .transactions(transactions)
+                        .build();
 
-                    // Build response DTO with payments
-                    VirtualAccountTransactionDTO transactionDTO = VirtualAccountTransactionDTO.builder()
-                            .totalPages(data.getPagination().getTotal_pages())
-                            .transactions(transactions)
-                            .build();
-
-                    response.setStatusCode(REQUEST_SUCCESS);
-                    response.setStatusMessage("Payment for Bank Account Retrieved Successfully");
-                    response.setData(transactionDTO);
-                } else {
-                    log.warn("Failed to retrieve payments for account: {}", virtualAccount.getAccountNumber());
-                    response.setStatusCode("49");
-                    response.setStatusMessage("Unable to get payments for virtual account");
-                }
+                response.setStatusCode(REQUEST_SUCCESS);
+                response.setStatusMessage("Payment for Bank Account Retrieved Successfully");
+                response.setData(transactionDTO);
+            } else {
+                log.warn("Failed to retrieve payments for account: {}", virtualAccount.getAccountNumber());
+                response.setStatusCode("49");
+                response.setStatusMessage("Unable to get payments for virtual account");
             }
-        } catch (Exception e) {
-            log.error("Error retrieving payments: {}", e.getMessage());
-            throw new RuntimeException(e);
-        }
-
-        return response;
+            return response;
+        }).whenComplete((response, ex) -> {
+            if (ex != null)
+                log.error("Error retrieving payments: {}", ex.getMessage());
+        });
     }
 
     @Override
@@ -241,7 +234,7 @@ public class VirtualAccountServiceImpl implements IVirtualAccountService {
         try {
             // Retrieve virtual account linked to employer
             Optional<VirtualAccount> optionalVirtualAccount =
-                    virtualAccountRepository.findByEmployer_EmployerId(EMPLOYER().getEmployerId());
+                    virtualAccountRepository.findByEmployer_EmployerId(EMPLOYER_ID());
 
             if (optionalVirtualAccount.isPresent()) {
                 virtualAccount = optionalVirtualAccount.get();
@@ -291,12 +284,10 @@ public class VirtualAccountServiceImpl implements IVirtualAccountService {
     }
 
     @Override
-    public DefaultApiResponse<BankTransferDetailsDTO> processBankTransfer(BigDecimal amount) {
-        DefaultApiResponse<BankTransferDetailsDTO> response = new DefaultApiResponse<>();
-
-        try {
-            // Call external KoraPay service to initiate bank transfer
-            DefaultKoraResponse<BankTransferResponseDTO> responseBody = koraPayService.initiateBankTransfer(amount, EMPLOYER());
+    public CompletableFuture<DefaultApiResponse<BankTransferDetailsDTO>> processBankTransfer(BigDecimal amount) {
+        // Call external KoraPay service to initiate bank transfer
+        return koraPayAsyncService.initiateBankTransferAsync(amount, EMPLOYER()).thenApply(responseBody -> {
+            DefaultApiResponse<BankTransferDetailsDTO> response = new DefaultApiResponse<>();
 
             log.info(responseBody.getMessage());
             log.info(responseBody.toString());
@@ -324,12 +315,11 @@ public class VirtualAccountServiceImpl implements IVirtualAccountService {
                 response.setStatusCode(STATUS_400);
                 response.setStatusMessage("Bank transfer initialization failed");
             }
-        } catch (Exception e) {
-            log.error("Error initiating bank transfer: {}", e.getMessage());
-            throw new RuntimeException(e);
-        }
-
-        return response;
+            return response;
+        }).whenComplete((response, ex) -> {
+            if (ex != null)
+                log.error("Error initiating bank transfer: {}", ex.getMessage());
+        });
     }
 
     @Override
@@ -339,7 +329,7 @@ public class VirtualAccountServiceImpl implements IVirtualAccountService {
         try {
             // Retrieve virtual account linked to employer
             Optional<VirtualAccount> optionalVirtualAccount =
-                    virtualAccountRepository.findByEmployer_EmployerId(EMPLOYER().getEmployerId());
+                    virtualAccountRepository.findByEmployer_EmployerId(EMPLOYER_ID());
 
             if (optionalVirtualAccount.isPresent()) {
                 virtualAccount = optionalVirtualAccount.get();
@@ -350,12 +340,7 @@ public class VirtualAccountServiceImpl implements IVirtualAccountService {
 
             if (responseBody.getMessage().equals("Card charged successfully")) {
 
-                virtualAccount.setBalance(responseBody
-                        .getData().getAmount().add(virtualAccount.getBalance()));
-                virtualAccountRepository.save(virtualAccount);
-
                 Payment payment = Payment.builder()
-                        .account(virtualAccount)
                         .amount(responseBody.getData().getAmount())
                         .currency(responseBody.getData().getCurrency())
                         .employeeName(null)
@@ -365,7 +350,7 @@ public class VirtualAccountServiceImpl implements IVirtualAccountService {
                         .transactionType("CREDIT")
                         .transactionDateTime(LocalDateTime.now())
                         .build();
-                paymentRepository.save(payment);
+                ledgerService.credit(virtualAccount, payment);
 
                 response.setStatusCode(REQUEST_SUCCESS);
                 response.setStatusMessage("Account CREDITED successfully");
@@ -384,83 +369,73 @@ public class VirtualAccountServiceImpl implements IVirtualAccountService {
 
 
     @Override // This would work for both fixedVirtualAccount or BankTransfer
-    public DefaultApiResponse<PaymentDTO> verifyPayment(String referenceNumber) {
-        int retryCount = 0;
-        int maxRetries = 5;
-        long retryInterval = 5000; // 5 seconds
-
-        DefaultApiResponse<PaymentDTO> response = new DefaultApiResponse<>();
-
-        try {
-            // Retrieve virtual account linked to employer
-            Optional<VirtualAccount> optionalVirtualAccount =
-                    virtualAccountRepository.findByEmployer_EmployerId(EMPLOYER().getEmployerId());
-
-            if (optionalVirtualAccount.isPresent()) {
-                VirtualAccount virtualAccount = optionalVirtualAccount.get();
-
-                // Fetch webhook data to verify transfer status
-                Optional<WebhookData> webhookDataOptional = webhookDataRepository.findByReference(referenceNumber);
+    public CompletableFuture<DefaultApiResponse<PaymentDTO>> verifyPayment(String referenceNumber) {
+        // Retrieve virtual account linked to employer while still on the request thread
+        Optional<VirtualAccount> optionalVirtualAccount =
+                virtualAccountRepository.findByEmployer_EmployerId(EMPLOYER_ID());
 
-                // Retry if the webhook data is not present
-                while (webhookDataOptional.isEmpty() && retryCount < maxRetries) {
-                    try {
-                        log.info("Waiting for webhook data...");
-                        TimeUnit.MILLISECONDS.sleep(retryInterval);  // Wait for 2 seconds
+        if (optionalVirtualAccount.isEmpty())
+            return CompletableFuture.completedFuture(new DefaultApiResponse<>());
 
-                        // Check for the webhook data again
-                        webhookDataOptional = webhookDataRepository.findByReference(referenceNumber);
+        VirtualAccount virtualAccount = optionalVirtualAccount.get();
 
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();  // Restore interrupt status
-                        throw new RuntimeException(e.getMessage());
+        // Completes when the webhook lands, or after a single DB lookup if it already has
+        return webhookCompletionRegistry.awaitWebhook(referenceNumber)
+                .thenApply(webhookData -> settleFunding(webhookData, virtualAccount))
+                .exceptionally(ex -> {
+                    DefaultApiResponse<PaymentDTO> response = new DefaultApiResponse<>();
+                    if (ex instanceof TimeoutException || ex.getCause() instanceof TimeoutException) {
+                        log.warn("No webhook received for reference: {}", referenceNumber);
+                    } else {
+                        log.error("Error verifying bank transfer: {}", ex.getMessage());
                     }
+                    response.setStatusCode(STATUS_400);
+                    response.setStatusMessage("Bank transfer failed");
+                    return response;
+                });
+    }
 
-                    retryCount++;
-                }
-
-                if (webhookDataOptional.isPresent()) {
-                    WebhookData webhookData = webhookDataOptional.get();
+    private DefaultApiResponse<PaymentDTO> settleFunding(WebhookData webhookData, VirtualAccount virtualAccount) {
+        DefaultApiResponse<PaymentDTO> response = new DefaultApiResponse<>();
 
-                    // Check if the transfer event was successful
-                    if (webhookData.getEvent().equals("charge.success")) {
-                        virtualAccount.setBalance(webhookData.getAmount().add(virtualAccount.getBalance()));
-                        virtualAccountRepository.save(virtualAccount);
+        // Check if the transfer event was successful
+        if (webhookData.getEvent().equals("charge.success")) {
+            // The same reference can be verified more than once; only the first credits the account
+            Optional<Payment> settled = paymentRepository.findByReferenceNumber(webhookData.getReference());
+            if (settled.isPresent()) {
+                response.setStatusCode(REQUEST_SUCCESS);
+                response.setStatusMessage("Bank transfer successful");
+                response.setData(convertToPaymentDTO(settled.get()));
+                return response;
+            }
 
-                        Payment payment = Payment.builder()
-                                .account(virtualAccount)
-                                .amount(webhookData.getAmount())
-                                .currency(webhookData.getCurrency())
-                                .employeeName(null)
-                                .payrollName(null)
-                                .referenceNumber(webhookData.getReference())
-                                .description("Fund Account")
-                                .transactionType("CREDIT")
-                                .transactionDateTime(LocalDateTime.now())
-                                .build();
+            Payment payment = Payment.builder()
+                    .amount(webhookData.getAmount())
+                    .currency(webhookData.getCurrency())
+                    .employeeName(null)
+                    .payrollName(null)
+                    .referenceNumber(webhookData.getReference())
+                    .description("Fund Account")
+                    .transactionType("CREDIT")
+                    .transactionDateTime(LocalDateTime.now())
+                    .build();
 
-                        paymentRepository.save(payment);
+            try {
+                ledgerService.credit(virtualAccount, payment);
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent verification of the same reference credited the account first
+                payment = paymentRepository.findByReferenceNumber(webhookData.getReference()).orElseThrow(() -> e);
+            }
 
-                        response.setStatusCode(REQUEST_SUCCESS);
-                        response.setStatusMessage("Bank transfer successful");
-                        response.setData(convertToPaymentDTO(payment));
+            response.setStatusCode(REQUEST_SUCCESS);
+            response.setStatusMessage("Bank transfer successful");
+            response.setData(convertToPaymentDTO(payment));
 
-                    } else {
-                        log.warn("Bank transfer failed for reference: {}", referenceNumber);
-                        response.setStatusCode(STATUS_400);
-                        response.setStatusMessage("Bank transfer failed");
-                    }
-                }else{
-                    response.setStatusCode(STATUS_400);
-                    response.setStatusMessage("Bank transfer failed");
-                    return response;
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error verifying bank transfer: {}", e.getMessage());
-            throw new RuntimeException(e);
+        } else {
+            log.warn("Bank transfer failed for reference: {}", webhookData.getReference());
+            response.setStatusCode(STATUS_400);
+            response.setStatusMessage("Bank transfer failed");
         }
-
         return response;
     }
 
@@ -468,7 +443,7 @@ public class VirtualAccountServiceImpl implements IVirtualAccountService {
         VirtualAccount virtualAccount = new VirtualAccount();
         // Retrieve virtual account linked to employer
         Optional<VirtualAccount> optionalVirtualAccount =
-                virtualAccountRepository.findByEmployer_EmployerId(EMPLOYER().getEmployerId());
+                virtualAccountRepository.findByEmployer_EmployerId(EMPLOYER_ID());
 
         if (optionalVirtualAccount.isPresent()) {
             virtualAccount = optionalVirtualAccount.get();
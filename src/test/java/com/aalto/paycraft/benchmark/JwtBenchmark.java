@@ -0,0 +1,85 @@
+package com.aalto.paycraft.benchmark;
+
+import com.aalto.paycraft.entity.Employer;
+import com.aalto.paycraft.entity.VirtualAccount;
+import com.aalto.paycraft.service.JWTService;
+import com.aalto.paycraft.service.TokenEpochService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Issuing and reading the compact access token. An authenticated request reads its token several times
+ * (subject, expiry, company, epoch); with the claims kept as a request attribute the signature is checked once,
+ * without a request every read parses the token again.
+ * Run with:
+ * mvn -q test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main JwtBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+    private JWTService jwtService;
+    private Employer employer;
+    private UUID companyId;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        TokenEpochService tokenEpochService = mock(TokenEpochService.class);
+        when(tokenEpochService.currentEpoch(any())).thenReturn(0L);
+
+        jwtService = new JWTService(tokenEpochService);
+        ReflectionTestUtils.setField(jwtService, "SECRET_STRING", Base64.getEncoder().encodeToString(
+                "benchmark-secret-of-at-least-32-bytes".getBytes(StandardCharsets.UTF_8)));
+        jwtService.init();
+
+        employer = Employer.builder().employerId(UUID.randomUUID()).build();
+        employer.setVirtualAccount(VirtualAccount.builder().accountId(UUID.randomUUID()).build());
+        companyId = UUID.randomUUID();
+        token = jwtService.createJWT(employer, companyId);
+    }
+
+    @Benchmark
+    public String issueAccessToken() {
+        return jwtService.createJWT(employer, companyId);
+    }
+
+    @Benchmark
+    public int readsInOneRequest() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        try {
+            return readFourTimes();
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Benchmark
+    public int readsWithoutRequest() {
+        return readFourTimes();
+    }
+
+    private int readFourTimes() {
+        String subject = jwtService.extractSubject(token);
+        boolean expired = jwtService.isTokenExpired(token);
+        String company = jwtService.extractClaims(token, claims -> claims.get(JWTService.CLAIM_COMPANY, String.class));
+        Number epoch = jwtService.extractClaims(token, claims -> claims.get(JWTService.CLAIM_EPOCH, Number.class));
+        return subject.length() + (expired ? 1 : 0) + company.length() + epoch.intValue();
+    }
+}
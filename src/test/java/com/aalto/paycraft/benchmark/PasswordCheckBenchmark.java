@@ -0,0 +1,45 @@
+package com.aalto.paycraft.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The BCrypt cost of one login at the configurable strengths: a single verification as login() does it now,
+ * against the earlier flow that verified the password again through the AuthenticationManager.
+ * Run with:
+ * mvn -q test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main PasswordCheckBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordCheckBenchmark {
+    private static final String PASSWORD = "Correct-Horse-Battery-9";
+
+    @Param({"10", "12"})
+    private int strength;
+
+    private BCryptPasswordEncoder encoder;
+    private String hash;
+
+    @Setup
+    public void setUp() {
+        encoder = new BCryptPasswordEncoder(strength);
+        hash = encoder.encode(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean verifyOnce() {
+        return encoder.matches(PASSWORD, hash);
+    }
+
+    @Benchmark
+    public boolean verifyTwice() {
+        return encoder.matches(PASSWORD, hash) && encoder.matches(PASSWORD, hash);
+    }
+}
@@ -0,0 +1,88 @@
+package com.aalto.paycraft.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.aalto.paycraft.dto.UssdDTO;
+import com.aalto.paycraft.entity.Employer;
+import com.aalto.paycraft.entity.VirtualAccount;
+import com.aalto.paycraft.repository.*;
+import com.aalto.paycraft.service.IPayrollService;
+import com.aalto.paycraft.service.IVirtualAccountService;
+import com.aalto.paycraft.service.UssdJobService;
+import com.aalto.paycraft.service.UssdSessionStore;
+import com.aalto.paycraft.service.impl.UssdServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * One USSD step through the precompiled menu table, with the session and its profile already in the store.
+ * "" and "1" continue the session; "2" reads the balance and ends it, so the next call loads the profile again.
+ * Repositories are mocks, so this measures routing and session handling rather than the database.
+ * Sampled so the report includes percentiles: p99 should stay under 1 ms, leaving nearly all of the gateway's
+ * few-second response deadline for the network and the database.
+ * Run with:
+ * mvn -q test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main UssdMenuBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UssdMenuBenchmark {
+    private static final String PHONE_NUMBER = "2348012345678";
+
+    @Param({"", "1", "2"})
+    private String text;
+
+    private UssdServiceImpl ussdService;
+    private String sessionId;
+
+    @Setup
+    public void setUp() {
+        // Every step logs the caller at INFO, which would otherwise dominate the timings
+        ((Logger) LoggerFactory.getLogger(UssdServiceImpl.class)).setLevel(Level.WARN);
+
+        EmployerRepository employerRepository = mock(EmployerRepository.class);
+        CompanyRepository companyRepository = mock(CompanyRepository.class);
+        VirtualAccountRepository virtualAccountRepository = mock(VirtualAccountRepository.class);
+
+        Employer employer = Employer.builder().employerId(UUID.randomUUID()).build();
+        employer.setVirtualAccount(VirtualAccount.builder()
+                .accountId(UUID.randomUUID())
+                .accountNumber("0123456789")
+                .bankName("Wema Bank")
+                .bankCode("035")
+                .build());
+        when(employerRepository.findWithVirtualAccountByPhoneNumber(anyString())).thenReturn(Optional.of(employer));
+        when(companyRepository.findByCompanyPhoneNumber(anyString())).thenReturn(Optional.empty());
+        when(virtualAccountRepository.findBalanceByAccountId(any())).thenReturn(Optional.of(new BigDecimal("125000.00")));
+
+        UssdSessionStore sessionStore = new UssdSessionStore();
+        ReflectionTestUtils.setField(sessionStore, "maxSize", 50_000);
+        ReflectionTestUtils.setField(sessionStore, "ttlMillis", 180_000L);
+        ReflectionTestUtils.invokeMethod(sessionStore, "init");
+
+        ussdService = new UssdServiceImpl(employerRepository, companyRepository, mock(PayrollRepository.class),
+                virtualAccountRepository, mock(CardRepository.class), mock(IVirtualAccountService.class),
+                mock(IPayrollService.class), sessionStore, mock(UssdJobService.class));
+        sessionId = UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public String step() {
+        return ussdService.ussdCallback(new UssdDTO(sessionId, "*384*1#", PHONE_NUMBER, text));
+    }
+}
@@ -0,0 +1,70 @@
+package com.aalto.paycraft.benchmark;
+
+import com.aalto.paycraft.repository.WebhookInboxRepository;
+import com.aalto.paycraft.service.KoraPayWebhook;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Webhook verification as KoraPayWebhook does it (HMAC over the raw bytes of "data" with a pooled Mac), against
+ * the earlier approach of re-serializing "data" and initializing a new Mac for every webhook.
+ * Run with:
+ * mvn -q test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main WebhookSignatureBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookSignatureBenchmark {
+    private static final String SECRET = "sk_test_benchmark_secret";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private KoraPayWebhook koraPayWebhook;
+    private byte[] body;
+    private String signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        koraPayWebhook = new KoraPayWebhook(mock(WebhookInboxRepository.class));
+        ReflectionTestUtils.setField(koraPayWebhook, "SECRET_KEY", SECRET);
+
+        String data = "{\"reference\":\"KPY-PAY-4f1c2a\",\"currency\":\"NGN\",\"amount\":250000.00,\"fee\":53.75,"
+                + "\"status\":\"success\",\"payout_reference\":\"4f1c2a9e-7b1d-4c3e-9a57-0d2b8f6e1c44\"}";
+        body = ("{\"event\":\"transfer.success\",\"data\":" + data + "}").getBytes(StandardCharsets.UTF_8);
+        signature = HexFormat.of().formatHex(newMac().doFinal(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Mac newMac() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return mac;
+    }
+
+    // Locating "data" in the raw bytes plus the HMAC; storing the inbox row is left out of both sides
+    @Benchmark
+    public boolean pooledMacOverRawData() {
+        long[] range = ReflectionTestUtils.invokeMethod(koraPayWebhook, "findDataRange", body);
+        return koraPayWebhook.verifySignature(body, (int) range[0], (int) (range[1] - range[0]), signature);
+    }
+
+    @Benchmark
+    public boolean newMacOverReserializedData() throws Exception {
+        JsonNode data = objectMapper.readTree(body).get("data");
+        byte[] payload = objectMapper.writeValueAsString(data).getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(newMac().doFinal(payload), HexFormat.of().parseHex(signature));
+    }
+}
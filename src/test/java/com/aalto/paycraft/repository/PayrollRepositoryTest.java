@@ -0,0 +1,103 @@
+package com.aalto.paycraft.repository;
+
+import com.aalto.paycraft.audit.AuditAwareImpl;
+import com.aalto.paycraft.dto.enums.CompanySize;
+import com.aalto.paycraft.dto.enums.Currency;
+import com.aalto.paycraft.dto.enums.PaymentStatus;
+import com.aalto.paycraft.entity.Company;
+import com.aalto.paycraft.entity.Employer;
+import com.aalto.paycraft.entity.Payroll;
+import com.aalto.paycraft.support.MariaDbTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Claims of due payrolls against embedded MariaDB, which runs the window function and SKIP LOCKED as MySQL does.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(AuditAwareImpl.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PayrollRepositoryTest extends MariaDbTest {
+    // Far enough in the past that no payroll from another test is due
+    private static final LocalDateTime DUE = LocalDateTime.of(2001, 1, 1, 9, 0);
+
+    @Autowired
+    private PayrollRepository payrollRepository;
+
+    @Autowired
+    private CompanyRepository companyRepository;
+
+    @Autowired
+    private EmployerRepository employerRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Company company() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        Employer employer = employerRepository.save(Employer.builder()
+                .firstName("Ada").lastName("Obi").emailAddress(suffix + "@paycraft.test").phoneNumber(suffix)
+                .streetAddress("1 Marina").jobTitle("CFO").bvn(suffix).password("x")
+                .build());
+        Company company = new Company();
+        company.setCompanyName("Company " + suffix);
+        company.setCompanySize(CompanySize.SMALL);
+        company.setCompanyEmailAddress(suffix + "@company.test");
+        company.setCompanyPhoneNumber(suffix);
+        company.setCompanyStreetAddress("1 Marina");
+        company.setCompanyCountry("Nigeria");
+        company.setCompanyCurrency(Currency.NGN);
+        company.setEmployer(employer);
+        return companyRepository.save(company);
+    }
+
+    private void duePayroll(Company company, LocalDateTime nextRunAt) {
+        payrollRepository.save(Payroll.builder()
+                .payrollName("Payroll " + UUID.randomUUID())
+                .automatic(true)
+                .cronExpression("0 0 9 * * *")
+                .nextRunAt(nextRunAt)
+                .paymentStatus(PaymentStatus.PENDING)
+                .company(company)
+                .build());
+    }
+
+    private List<UUID> claimedCompanies(int limit) {
+        return new TransactionTemplate(transactionManager).execute(status ->
+                payrollRepository.lockDuePayrolls(DUE.plusMinutes(1), limit).stream()
+                        .map(row -> UUID.fromString((String) row[2]))
+                        .toList());
+    }
+
+    @Test
+    void claimsTakeTurnsBetweenCompanies() {
+        Company busy = company();
+        Company other = company();
+        Company late = company();
+        for (int i = 0; i < 50; i++)
+            duePayroll(busy, DUE);
+        duePayroll(other, DUE.plusSeconds(1));
+        duePayroll(other, DUE.plusSeconds(2));
+        duePayroll(late, DUE.plusSeconds(30));
+
+        // Each company's first payroll, by due time, before any company's second
+        assertEquals(List.of(busy.getCompanyId(), other.getCompanyId(), late.getCompanyId(),
+                busy.getCompanyId(), other.getCompanyId(), busy.getCompanyId()), claimedCompanies(6));
+    }
+}
@@ -0,0 +1,108 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.audit.AuditAwareImpl;
+import com.aalto.paycraft.repository.ClusterLeaseRepository;
+import com.aalto.paycraft.support.MariaDbTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two LeaseService instances with different node ids stand in for two nodes sharing the cluster_leases table.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(AuditAwareImpl.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LeaseServiceTest extends MariaDbTest {
+    private static final Duration TTL = Duration.ofMillis(1000);
+
+    @Autowired
+    private ClusterLeaseRepository leaseRepository;
+
+    private LeaseService node(String nodeId) {
+        LeaseService leaseService = new LeaseService(leaseRepository);
+        ReflectionTestUtils.setField(leaseService, "configuredNodeId", nodeId);
+        leaseService.init();
+        return leaseService;
+    }
+
+    private static String leaseName() {
+        return "test-" + UUID.randomUUID();
+    }
+
+    @Test
+    void secondNodeTakesOverWithinOneTtlAndGetsAHigherToken() throws Exception {
+        LeaseService first = node("node-a");
+        LeaseService second = node("node-b");
+        String name = leaseName();
+
+        long firstToken = first.tryAcquire(name, TTL).orElseThrow();
+        assertTrue(second.tryAcquire(name, TTL).isEmpty());
+
+        // The first node stops renewing, as if it had died
+        Thread.sleep(TTL.toMillis() + 200);
+
+        Optional<Long> secondToken = second.tryAcquire(name, TTL);
+        assertTrue(secondToken.isPresent());
+        assertEquals(firstToken + 1, secondToken.get());
+        assertFalse(first.isHeld(name, firstToken));
+        assertTrue(second.isHeld(name, secondToken.get()));
+        assertTrue(first.tryAcquire(name, TTL).isEmpty());
+    }
+
+    @Test
+    void renewedLeaseIsNotTakenOver() throws Exception {
+        LeaseService first = node("node-a");
+        LeaseService second = node("node-b");
+        String name = leaseName();
+
+        AtomicBoolean heldThroughout = new AtomicBoolean();
+        assertTrue(first.runExclusively(name, TTL, token -> {
+            try {
+                for (int i = 0; i < 4; i++) {
+                    Thread.sleep(TTL.toMillis() / 2);
+                    first.renewHeldLeases();
+                    assertTrue(second.tryAcquire(name, TTL).isEmpty());
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            heldThroughout.set(first.isHeld(name, token));
+        }));
+        assertTrue(heldThroughout.get());
+    }
+
+    @Test
+    void oldHolderCannotRenewOrReleaseAfterTakeover() throws Exception {
+        LeaseService first = node("node-a");
+        LeaseService second = node("node-b");
+        String name = leaseName();
+
+        long firstToken = first.tryAcquire(name, TTL).orElseThrow();
+        Thread.sleep(TTL.toMillis() + 200);
+        long secondToken = second.tryAcquire(name, TTL).orElseThrow();
+
+        assertEquals(0, leaseRepository.renew(name, "node-a", firstToken, TTL.toMillis()));
+        first.release(name, firstToken);
+        assertTrue(second.isHeld(name, secondToken));
+
+        // A released lease can be taken straight away
+        second.release(name, secondToken);
+        assertEquals(secondToken + 1, first.tryAcquire(name, TTL).orElseThrow());
+    }
+}
@@ -0,0 +1,247 @@
+package com.aalto.paycraft.service;
+
+import com.aalto.paycraft.audit.AuditAwareImpl;
+import com.aalto.paycraft.dto.enums.Currency;
+import com.aalto.paycraft.dto.enums.PayoutStatus;
+import com.aalto.paycraft.dto.enums.WebhookInboxStatus;
+import com.aalto.paycraft.entity.*;
+import com.aalto.paycraft.repository.*;
+import com.aalto.paycraft.support.MariaDbTest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the inbox against embedded MariaDB, so duplicate detection goes through the real unique key on webhook_data
+ * and the affected-row counts MySQL reports for it.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({AuditAwareImpl.class, LedgerService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class WebhookInboxProcessorTest extends MariaDbTest {
+    @Autowired
+    private WebhookInboxRepository webhookInboxRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private PayoutRepository payoutRepository;
+
+    @Autowired
+    private EmployerRepository employerRepository;
+
+    @Autowired
+    private VirtualAccountRepository virtualAccountRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private WebhookDataRepository webhookDataRepository;
+
+    private final KoraPayWebhook koraPayWebhook = mock(KoraPayWebhook.class);
+    private final PayoutProcessor payoutProcessor = mock(PayoutProcessor.class);
+    private final PayrollRunService payrollRunService = mock(PayrollRunService.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Payloads in these tests are "event|reference"
+        when(koraPayWebhook.toWebhookData(anyString())).thenAnswer(invocation -> {
+            String[] parts = invocation.<String>getArgument(0).split("\\|");
+            return WebhookData.builder()
+                    .event(parts[0])
+                    .reference(parts[1])
+                    .currency("NGN")
+                    .amount(BigDecimal.TEN)
+                    .fee(BigDecimal.ZERO)
+                    .status("success")
+                    .build();
+        });
+    }
+
+    // A fresh processor has an empty recent-keys filter, as after a restart or on another node
+    private WebhookInboxProcessor newProcessor() {
+        return newProcessor(payoutProcessor);
+    }
+
+    private WebhookInboxProcessor newProcessor(PayoutProcessor payoutProcessor) {
+        WebhookInboxProcessor processor = new WebhookInboxProcessor(webhookInboxRepository, koraPayWebhook,
+                payoutProcessor, mock(WebhookCompletionRegistry.class), jdbcTemplate,
+                new TransactionTemplate(transactionManager), meterRegistry,
+                mock(LeaseService.class), payrollRunService, Runnable::run);
+        ReflectionTestUtils.setField(processor, "batchSize", 100);
+        ReflectionTestUtils.setField(processor, "maxAttempts", 5);
+        ReflectionTestUtils.setField(processor, "recentKeysCapacity", 100);
+        processor.registerMetrics();
+        return processor;
+    }
+
+    private String claim(String... payloads) {
+        String claimToken = UUID.randomUUID().toString();
+        for (String payload : payloads) {
+            webhookInboxRepository.save(WebhookInbox.builder()
+                    .payload(payload)
+                    .status(WebhookInboxStatus.PROCESSING)
+                    .claimToken(claimToken)
+                    .claimedAt(LocalDateTime.now())
+                    .receivedAt(LocalDateTime.now())
+                    .attempts(1)
+                    .build());
+        }
+        return claimToken;
+    }
+
+    private long storedCount(String reference) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM webhook_data WHERE reference = ?", Long.class, reference);
+    }
+
+    @Test
+    void redeliveryAfterRestartIsStoredAndAppliedOnce() {
+        String payload = "transfer.success|" + UUID.randomUUID();
+        String reference = payload.split("\\|")[1];
+
+        newProcessor().processBatch(claim(payload));
+        newProcessor().processBatch(claim(payload));
+
+        assertEquals(1, storedCount(reference));
+        verify(payoutProcessor, times(1)).onWebhook(any());
+        assertEquals(1.0, meterRegistry.counter("webhook.inbox.duplicates").count());
+    }
+
+    @Test
+    void redeliveryInTheSameBatchIsCountedAsDuplicate() {
+        String payload = "transfer.failed|" + UUID.randomUUID();
+
+        newProcessor().processBatch(claim(payload, payload));
+
+        assertEquals(1, storedCount(payload.split("\\|")[1]));
+        verify(payoutProcessor, times(1)).onWebhook(any());
+        assertEquals(1.0, meterRegistry.counter("webhook.inbox.duplicates").count());
+    }
+
+    @Test
+    void otherEventsForTheSameReferenceAreStored() {
+        String reference = UUID.randomUUID().toString();
+
+        newProcessor().processBatch(claim("transfer.success|" + reference));
+        newProcessor().processBatch(claim("transfer.failed|" + reference));
+
+        assertEquals(2, storedCount(reference));
+        assertEquals(0.0, meterRegistry.counter("webhook.inbox.duplicates").count());
+        List<WebhookInbox> rows = webhookInboxRepository.findAll().stream()
+                .filter(row -> row.getPayload().endsWith(reference))
+                .toList();
+        assertEquals(2, rows.size());
+        rows.forEach(row -> assertEquals(WebhookInboxStatus.DONE, row.getStatus()));
+    }
+
+    @Test
+    void eventWhoseEffectFailsStaysRetryable() {
+        String failing = "transfer.success|" + UUID.randomUUID();
+        String healthy = "transfer.success|" + UUID.randomUUID();
+        doAnswer(invocation -> {
+            if (failing.endsWith(invocation.<WebhookData>getArgument(0).getReference()))
+                throw new IllegalStateException("ledger unavailable");
+            return null;
+        }).when(payoutProcessor).onWebhook(any());
+
+        String claimToken = claim(failing, healthy);
+        newProcessor().processBatch(claimToken);
+
+        // The failed event is not recorded, so its retry is not mistaken for a duplicate
+        assertEquals(0, storedCount(failing.split("\\|")[1]));
+        assertEquals(1, storedCount(healthy.split("\\|")[1]));
+        for (WebhookInbox row : webhookInboxRepository.findAll()) {
+            if (!claimToken.equals(row.getClaimToken()))
+                continue;
+            if (row.getPayload().equals(failing))
+                assertEquals(WebhookInboxStatus.PROCESSING, row.getStatus());
+            else
+                assertEquals(WebhookInboxStatus.DONE, row.getStatus());
+        }
+
+        // Once the effect goes through, the retried row is stored and applied
+        doNothing().when(payoutProcessor).onWebhook(any());
+        newProcessor().processBatch(claim(failing));
+        assertEquals(1, storedCount(failing.split("\\|")[1]));
+    }
+
+    // Webhooks applied to payouts through the real ledger, inside the inbox's transaction
+    private PayoutProcessor ledgerPayoutProcessor() {
+        return new PayoutProcessor(payoutRepository, mock(EmployeeRepository.class), employerRepository,
+                mock(PayrollRepository.class), virtualAccountRepository, paymentRepository, ledgerService,
+                webhookDataRepository, mock(IKoraPayService.class), mock(BankDirectory.class), payrollRunService,
+                mock(BulkPayoutSubmitter.class), Runnable::run);
+    }
+
+    @Test
+    void failedWebhookForAnAlreadyReleasedPayoutIsApplied() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        Employer employer = employerRepository.save(Employer.builder()
+                .firstName("Ada").lastName("Obi").emailAddress(suffix + "@paycraft.test").phoneNumber(suffix)
+                .streetAddress("1 Marina").jobTitle("CFO").bvn(suffix).password("x")
+                .build());
+        VirtualAccount account = virtualAccountRepository.save(VirtualAccount.builder()
+                .accountNumber(suffix).balance(BigDecimal.ZERO).accountReference(suffix)
+                .koraAccountReference("kora-" + suffix).bankCode("035").bankName("Wema Bank")
+                .accountStatus("active").currency(Currency.NGN).employer(employer)
+                .build());
+        Payout payout = payoutRepository.save(Payout.builder()
+                .status(PayoutStatus.PROCESSING).employerId(employer.getEmployerId()).employeeId(UUID.randomUUID())
+                .amount(new BigDecimal("100.00")).currency("NGN")
+                .build());
+        payout.setReference(payout.getPayoutId().toString());
+        payoutRepository.save(payout);
+
+        // The reservation was already given back, e.g. released before a crash left the payout PROCESSING
+        ledgerService.credit(account, Payment.builder()
+                .referenceNumber(payout.getPayoutId() + "-reversal")
+                .amount(payout.getAmount())
+                .transactionDateTime(LocalDateTime.now())
+                .description("Payout Reversal")
+                .currency("NGN")
+                .build());
+
+        String payload = "transfer.failed|" + payout.getReference();
+        String claimToken = claim(payload);
+        newProcessor(ledgerPayoutProcessor()).processBatch(claimToken);
+
+        assertEquals(PayoutStatus.FAILED, payoutRepository.findById(payout.getPayoutId()).orElseThrow().getStatus());
+        assertEquals(0, new BigDecimal("100.00").compareTo(ledgerService.balanceOf(account)));
+        assertEquals(1, storedCount(payout.getReference()));
+        webhookInboxRepository.findAllByClaimToken(claimToken)
+                .forEach(row -> assertEquals(WebhookInboxStatus.DONE, row.getStatus()));
+    }
+}
@@ -0,0 +1,39 @@
+package com.aalto.paycraft.support;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Base for tests that need the real MySQL dialect: INSERT IGNORE, affected-row counts, locking reads.
+ * One embedded MariaDB is started per JVM on a free port and shared by every subclass.
+ */
+public abstract class MariaDbTest {
+    private static final String DATABASE = "paycraft";
+    private static DB db;
+
+    private static synchronized DB db() throws ManagedProcessException {
+        if (db == null) {
+            DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+            config.setPort(0);
+            config.addArg("--user=root");
+            db = DB.newEmbeddedDB(config.build());
+            db.start();
+            db.createDB(DATABASE);
+        }
+        return db;
+    }
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> {
+            try {
+                return "jdbc:mysql://localhost:" + db().getConfiguration().getPort() + "/" + DATABASE;
+            } catch (ManagedProcessException e) {
+                throw new IllegalStateException("Could not start embedded MariaDB", e);
+            }
+        });
+    }
+}